@@ -0,0 +1,98 @@
+package utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Control;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение {@link BlockingCyclicQueue} и {@link LongCyclicQueue} с {@link ArrayBlockingQueue}
+ * и {@link LinkedBlockingQueue}. Через очереди передаются значения long: объектные
+ * очереди получают заранее упакованное значение, {@link LongCyclicQueue} - примитив.
+ * Производитель и потребитель работают в отдельных потоках одной группы,
+ * ожидание прерывается по окончании итерации
+ *
+ * @author Aleksei Vokhmin
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BlockingQueueBenchmark {
+    private static final Long VALUE = 42L;
+
+    /**
+     * Реализация очереди
+     */
+    @Param({"BlockingCyclicQueue", "LongCyclicQueue", "ArrayBlockingQueue", "LinkedBlockingQueue"})
+    public String implementation;
+
+    /**
+     * Размер очереди
+     */
+    @Param({"1024"})
+    public int capacity;
+
+    private BlockingQueue<Long> queue;
+    private LongCyclicQueue longQueue;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        queue = null;
+        longQueue = null;
+        switch (implementation) {
+            case "BlockingCyclicQueue" -> queue = new BlockingCyclicQueue<>(capacity);
+            case "LongCyclicQueue" -> longQueue = new LongCyclicQueue(capacity);
+            case "ArrayBlockingQueue" -> queue = new ArrayBlockingQueue<>(capacity);
+            case "LinkedBlockingQueue" -> queue = new LinkedBlockingQueue<>(capacity);
+            default -> throw new IllegalArgumentException(implementation);
+        }
+    }
+
+    private boolean offer() {
+        return longQueue != null ? longQueue.offer(VALUE) : queue.offer(VALUE);
+    }
+
+    private boolean poll() {
+        return longQueue != null ? longQueue.poll().isPresent() : queue.poll() != null;
+    }
+
+    /**
+     * Передача в одном потоке, без соперничества за блокировку
+     */
+    @Benchmark
+    @Group("single")
+    @GroupThreads(1)
+    public boolean offerPoll() {
+        offer();
+        return poll();
+    }
+
+    @Benchmark
+    @Group("pipe")
+    @GroupThreads(1)
+    public void producer(Control control) {
+        while (!offer() && !control.stopMeasurement)
+            Thread.onSpinWait();
+    }
+
+    @Benchmark
+    @Group("pipe")
+    @GroupThreads(1)
+    public void consumer(Control control) {
+        while (!poll() && !control.stopMeasurement)
+            Thread.onSpinWait();
+    }
+}
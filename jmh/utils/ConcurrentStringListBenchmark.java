@@ -0,0 +1,276 @@
+package utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Бенчмарки масштабирования чтения {@link ConcurrentStringList} при 1-32 читателях
+ * и одном писателе. Каждая группа - это N потоков, читающих {@link ConcurrentStringList#charAt(int)}
+ * или {@link ConcurrentStringList#toString()}, и один поток, который добавляет фрагмент
+ * в конец и удаляет фрагмент из начала, чтобы длина строки не менялась.
+ * Для сравнения тот же сценарий выполняется над {@link StringList}, защищённым
+ * {@link ReentrantReadWriteLock}: читатели берут блокировку чтения, писатель - записи.
+ * Пропускная способность читателей по группам показывает, как чтение масштабируется
+ * с числом потоков и насколько ему мешает писатель
+ *
+ * @author Aleksei Vokhmin
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConcurrentStringListBenchmark {
+    /**
+     * Фрагмент, который добавляет писатель
+     */
+    private static final String FRAGMENT = "0123456789abcdef";
+
+    /**
+     * Длина строки
+     */
+    @Param({"1024", "65536"})
+    public int size;
+
+    /**
+     * Способ синхронизации: snapshot - {@link ConcurrentStringList},
+     * readWriteLock - {@link StringList} под {@link ReentrantReadWriteLock}
+     */
+    @Param({"snapshot", "readWriteLock"})
+    public String implementation;
+
+    private ConcurrentStringList concurrent;
+    private StringList locked;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        Random random = new Random(42);
+        char[] chars = new char[size];
+        for (int i = 0; i < size; i++)
+            chars[i] = (char) ('a' + random.nextInt(26));
+        String string = new String(chars);
+        concurrent = null;
+        locked = null;
+        if (implementation.equals("snapshot"))
+            concurrent = new ConcurrentStringList(string);
+        else
+            locked = new StringList(string);
+    }
+
+    private char charAt() {
+        int index = ThreadLocalRandom.current().nextInt(size);
+        if (concurrent != null)
+            return concurrent.charAt(index);
+        lock.readLock().lock();
+        try {
+            return locked.charAtShared(index);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private String read() {
+        if (concurrent != null)
+            return concurrent.toString();
+        lock.readLock().lock();
+        try {
+            return locked.toString();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void write() {
+        if (concurrent != null) {
+            concurrent.update(buffer -> buffer.append(FRAGMENT).delete(0, FRAGMENT.length()));
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            locked.append(FRAGMENT).delete(0, FRAGMENT.length());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Benchmark
+    @Group("charAt1")
+    @GroupThreads(1)
+    public char charAt1Reader() {
+        return charAt();
+    }
+
+    @Benchmark
+    @Group("charAt1")
+    @GroupThreads(1)
+    public void charAt1Writer() {
+        write();
+    }
+
+    @Benchmark
+    @Group("charAt2")
+    @GroupThreads(2)
+    public char charAt2Reader() {
+        return charAt();
+    }
+
+    @Benchmark
+    @Group("charAt2")
+    @GroupThreads(1)
+    public void charAt2Writer() {
+        write();
+    }
+
+    @Benchmark
+    @Group("charAt4")
+    @GroupThreads(4)
+    public char charAt4Reader() {
+        return charAt();
+    }
+
+    @Benchmark
+    @Group("charAt4")
+    @GroupThreads(1)
+    public void charAt4Writer() {
+        write();
+    }
+
+    @Benchmark
+    @Group("charAt8")
+    @GroupThreads(8)
+    public char charAt8Reader() {
+        return charAt();
+    }
+
+    @Benchmark
+    @Group("charAt8")
+    @GroupThreads(1)
+    public void charAt8Writer() {
+        write();
+    }
+
+    @Benchmark
+    @Group("charAt16")
+    @GroupThreads(16)
+    public char charAt16Reader() {
+        return charAt();
+    }
+
+    @Benchmark
+    @Group("charAt16")
+    @GroupThreads(1)
+    public void charAt16Writer() {
+        write();
+    }
+
+    @Benchmark
+    @Group("charAt32")
+    @GroupThreads(32)
+    public char charAt32Reader() {
+        return charAt();
+    }
+
+    @Benchmark
+    @Group("charAt32")
+    @GroupThreads(1)
+    public void charAt32Writer() {
+        write();
+    }
+
+    @Benchmark
+    @Group("toString1")
+    @GroupThreads(1)
+    public String toString1Reader() {
+        return read();
+    }
+
+    @Benchmark
+    @Group("toString1")
+    @GroupThreads(1)
+    public void toString1Writer() {
+        write();
+    }
+
+    @Benchmark
+    @Group("toString2")
+    @GroupThreads(2)
+    public String toString2Reader() {
+        return read();
+    }
+
+    @Benchmark
+    @Group("toString2")
+    @GroupThreads(1)
+    public void toString2Writer() {
+        write();
+    }
+
+    @Benchmark
+    @Group("toString4")
+    @GroupThreads(4)
+    public String toString4Reader() {
+        return read();
+    }
+
+    @Benchmark
+    @Group("toString4")
+    @GroupThreads(1)
+    public void toString4Writer() {
+        write();
+    }
+
+    @Benchmark
+    @Group("toString8")
+    @GroupThreads(8)
+    public String toString8Reader() {
+        return read();
+    }
+
+    @Benchmark
+    @Group("toString8")
+    @GroupThreads(1)
+    public void toString8Writer() {
+        write();
+    }
+
+    @Benchmark
+    @Group("toString16")
+    @GroupThreads(16)
+    public String toString16Reader() {
+        return read();
+    }
+
+    @Benchmark
+    @Group("toString16")
+    @GroupThreads(1)
+    public void toString16Writer() {
+        write();
+    }
+
+    @Benchmark
+    @Group("toString32")
+    @GroupThreads(32)
+    public String toString32Reader() {
+        return read();
+    }
+
+    @Benchmark
+    @Group("toString32")
+    @GroupThreads(1)
+    public void toString32Writer() {
+        write();
+    }
+}
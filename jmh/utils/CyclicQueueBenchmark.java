@@ -0,0 +1,97 @@
+package utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарки пропускной способности {@link CyclicQueue} при 1-16 потоках.
+ * Каждый поток кладёт элемент и забирает элемент, поэтому потоки выступают
+ * и производителями, и потребителями, а очередь не может застрять
+ * в конце итерации. Журналирование очереди выключено уровнем логгера по умолчанию
+ *
+ * @author Aleksei Vokhmin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CyclicQueueBenchmark {
+    /**
+     * Размер пакета, меньше вместимости очереди в 10 элементов
+     */
+    private static final int BATCH = 8;
+
+    private CyclicQueue queue;
+    private final int[] batch = new int[BATCH];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        queue = new CyclicQueue();
+    }
+
+    private int transfer() {
+        queue.insert(1);
+        return queue.remove();
+    }
+
+    /**
+     * Передача без ожидания и без исключений: {@link CyclicQueue#offer(int)}
+     * и {@link CyclicQueue#poll()}
+     */
+    @Benchmark
+    @Threads(1)
+    public int offerPoll1() {
+        queue.offer(1);
+        return queue.poll().orElse(0);
+    }
+
+    /**
+     * Пакетная передача в одном потоке: {@link #BATCH} элементов за один захват
+     * блокировки на вставку и один на извлечение. Пропускная способность в элементах
+     * в {@link #BATCH} раз больше числа операций
+     */
+    @Benchmark
+    @Threads(1)
+    public int transferBatch1() throws InterruptedException {
+        queue.insertAll(batch, 0, BATCH);
+        return queue.drainTo(batch, BATCH);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int transfer1() {
+        return transfer();
+    }
+
+    @Benchmark
+    @Threads(2)
+    public int transfer2() {
+        return transfer();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int transfer4() {
+        return transfer();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public int transfer8() {
+        return transfer();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public int transfer16() {
+        return transfer();
+    }
+}
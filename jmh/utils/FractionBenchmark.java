@@ -0,0 +1,69 @@
+package utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарки создания, сравнения и вывода {@link Fraction}
+ *
+ * @author Aleksei Vokhmin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FractionBenchmark {
+    private int[] numerators;
+    private int[] denominators;
+    private Fraction[] fractions;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        numerators = new int[1024];
+        denominators = new int[1024];
+        fractions = new Fraction[1024];
+        for (int i = 0; i < fractions.length; i++) {
+            numerators[i] = random.nextInt(20001) - 10000;
+            denominators[i] = random.nextInt(10000) + 1;
+            fractions[i] = Fraction.valueOf(numerators[i], denominators[i]);
+        }
+    }
+
+    @Benchmark
+    public Fraction valueOf() {
+        int i = next++ & (fractions.length - 1);
+        return Fraction.valueOf(numerators[i], denominators[i]);
+    }
+
+    @Benchmark
+    public int compareTo() {
+        int i = next++ & (fractions.length - 1);
+        return fractions[i].compareTo(fractions[(i + 1) & (fractions.length - 1)]);
+    }
+
+    @Benchmark
+    public boolean equalsBenchmark() {
+        int i = next++ & (fractions.length - 1);
+        return fractions[i].equals(fractions[(i + 1) & (fractions.length - 1)]);
+    }
+
+    @Benchmark
+    public int hashCodeBenchmark() {
+        return fractions[next++ & (fractions.length - 1)].hashCode();
+    }
+
+    @Benchmark
+    public String toStringBenchmark() {
+        return fractions[next++ & (fractions.length - 1)].toString();
+    }
+}
@@ -0,0 +1,92 @@
+package utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарки {@link IntSortedList}, те же операции, что и в {@link SortedListBenchmark},
+ * для сравнения с упакованными значениями. {@link LongSortedList} и {@link DoubleSortedList}
+ * устроены так же
+ *
+ * @author Aleksei Vokhmin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class IntSortedListBenchmark {
+    /**
+     * Количество элементов в списке
+     */
+    @Param({"1000", "10000", "1000000"})
+    public int size;
+
+    private int[] values;
+    private IntSortedList list;
+    private IntSortedList unsorted;
+    private IntSortedList ordered;
+    private int[] positions;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        values = new int[size];
+        for (int i = 0; i < size; i++)
+            values[i] = random.nextInt();
+        list = new IntSortedList(size + 1, false);
+        for (int i = 0; i < size; i++)
+            list.insert(values[i], list.end());
+        positions = new int[1024];
+        for (int i = 0; i < positions.length; i++)
+            positions[i] = random.nextInt(size);
+        unsorted = new IntSortedList(size, false);
+        ordered = new IntSortedList(size + 1, true);
+        for (int i = 0; i < size; i++)
+            ordered.add(values[i]);
+    }
+
+    /**
+     * Перед каждой сортировкой список заполняется заново в случайном порядке
+     */
+    @Setup(Level.Invocation)
+    public void fillUnsorted() {
+        unsorted.makeNull();
+        for (int value : values)
+            unsorted.insert(value, unsorted.end());
+    }
+
+    @Benchmark
+    public int insertDelete() {
+        int position = positions[next++ & (positions.length - 1)];
+        int value = values[position];
+        list.insert(value, position);
+        list.delete(position);
+        return value;
+    }
+
+    @Benchmark
+    public int locate() {
+        return list.locate(values[positions[next++ & (positions.length - 1)]]);
+    }
+
+    @Benchmark
+    public int locateSorted() {
+        return ordered.locate(values[positions[next++ & (positions.length - 1)]]);
+    }
+
+    @Benchmark
+    public IntSortedList sort() {
+        unsorted.sort();
+        return unsorted;
+    }
+}
@@ -0,0 +1,74 @@
+package utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Control;
+
+import java.util.OptionalInt;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарки пропускной способности {@link SpscCyclicQueue} и {@link MpmcCyclicQueue}.
+ * Производители и потребители работают в отдельных потоках одной группы.
+ * Ожидание места или элемента прерывается по окончании итерации,
+ * поэтому потоки не зависают, когда их пары уже остановились
+ *
+ * @author Aleksei Vokhmin
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LockFreeCyclicQueueBenchmark {
+    private SpscCyclicQueue spsc;
+    private MpmcCyclicQueue mpmc;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        spsc = new SpscCyclicQueue();
+        mpmc = new MpmcCyclicQueue();
+    }
+
+    @Benchmark
+    @Group("spsc")
+    @GroupThreads(1)
+    public void spscOffer(Control control) {
+        while (!spsc.offer(1) && !control.stopMeasurement)
+            Thread.onSpinWait();
+    }
+
+    @Benchmark
+    @Group("spsc")
+    @GroupThreads(1)
+    public int spscPoll(Control control) {
+        OptionalInt value;
+        while (!(value = spsc.poll()).isPresent() && !control.stopMeasurement)
+            Thread.onSpinWait();
+        return value.orElse(0);
+    }
+
+    @Benchmark
+    @Group("mpmc")
+    @GroupThreads(4)
+    public void mpmcOffer(Control control) {
+        while (!mpmc.offer(1) && !control.stopMeasurement)
+            Thread.onSpinWait();
+    }
+
+    @Benchmark
+    @Group("mpmc")
+    @GroupThreads(4)
+    public int mpmcPoll(Control control) {
+        OptionalInt value;
+        while (!(value = mpmc.poll()).isPresent() && !control.stopMeasurement)
+            Thread.onSpinWait();
+        return value.orElse(0);
+    }
+}
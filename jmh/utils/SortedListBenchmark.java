@@ -0,0 +1,122 @@
+package utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарки вставки, поиска и сортировки {@link SortedList}
+ *
+ * @author Aleksei Vokhmin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SortedListBenchmark {
+    /**
+     * Количество элементов в списке
+     */
+    @Param({"1000", "10000", "1000000"})
+    public int size;
+
+    private Integer[] values;
+    private SortedList<Integer> list;
+    private SortedList<Integer> unsorted;
+    private SortedList<Integer> ordered;
+    private int[] positions;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        values = new Integer[size];
+        for (int i = 0; i < size; i++)
+            values[i] = random.nextInt();
+        list = new SortedList<>(new Integer[size + 1]);
+        for (int i = 0; i < size; i++)
+            list.insert(values[i], list.end());
+        positions = new int[1024];
+        for (int i = 0; i < positions.length; i++)
+            positions[i] = random.nextInt(size);
+        unsorted = new SortedList<>(new Integer[size]);
+        ordered = new SortedList<>(new Integer[size + 1], true);
+        for (int i = 0; i < size; i++)
+            ordered.add(values[i]);
+    }
+
+    /**
+     * Перед каждой сортировкой список заполняется заново в случайном порядке
+     */
+    @Setup(Level.Invocation)
+    public void fillUnsorted() {
+        unsorted.makeNull();
+        for (Integer value : values)
+            unsorted.insert(value, unsorted.end());
+    }
+
+    /**
+     * Вставка в случайную позицию и удаление вставленного элемента,
+     * чтобы размер списка не менялся
+     */
+    @Benchmark
+    public Integer insertDelete() {
+        int position = positions[next++ & (positions.length - 1)];
+        Integer value = values[position];
+        list.insert(value, position);
+        list.delete(position);
+        return value;
+    }
+
+    /**
+     * Вставка и удаление рядом с курсором, который медленно движется по списку
+     */
+    @Benchmark
+    public Integer insertDeleteClustered() {
+        int position = (next++ >>> 4) % size;
+        Integer value = values[position];
+        list.insert(value, position);
+        list.delete(position);
+        return value;
+    }
+
+    @Benchmark
+    public int locate() {
+        return list.locate(values[positions[next++ & (positions.length - 1)]]);
+    }
+
+    @Benchmark
+    public int locateSorted() {
+        return ordered.locate(values[positions[next++ & (positions.length - 1)]]);
+    }
+
+    /**
+     * Добавление в упорядоченный список и удаление добавленного элемента
+     */
+    @Benchmark
+    public Integer addDeleteSorted() {
+        Integer value = values[positions[next++ & (positions.length - 1)]];
+        ordered.delete(ordered.add(value));
+        return value;
+    }
+
+    @Benchmark
+    public SortedList<Integer> sort() {
+        unsorted.sort();
+        return unsorted;
+    }
+
+    @Benchmark
+    public SortedList<Integer> parallelSort() {
+        unsorted.parallelSort();
+        return unsorted;
+    }
+}
@@ -0,0 +1,164 @@
+package utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарки основных операций {@link StringList} на строках от 16 символов до 64 МБ.
+ * Изменяющие операции работают с копией списка, которая создаётся за O(1)
+ *
+ * @author Aleksei Vokhmin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StringListBenchmark {
+    /**
+     * Фрагмент для вставки и добавления
+     */
+    private static final String FRAGMENT = "0123456789abcdef";
+
+    /**
+     * Количество добавлений в цепочке
+     */
+    private static final int CHAIN_LENGTH = 64;
+
+    /**
+     * Длина строки
+     */
+    @Param({"16", "1024", "65536", "1048576", "67108864"})
+    public int size;
+
+    private String string;
+    private StringList list;
+    private StringList growing;
+    private int[] indices;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        char[] chars = new char[size];
+        for (int i = 0; i < size; i++)
+            chars[i] = (char) ('a' + random.nextInt(26));
+        string = new String(chars);
+        list = new StringList(string);
+        indices = new int[1024];
+        for (int i = 0; i < indices.length; i++)
+            indices[i] = random.nextInt(size);
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpIteration() {
+        growing = new StringList(list);
+    }
+
+    @Benchmark
+    public StringList construct() {
+        return new StringList(string);
+    }
+
+    @Benchmark
+    public char charAtRandom() {
+        return list.charAt(indices[next++ & (indices.length - 1)]);
+    }
+
+    @Benchmark
+    public StringList insertHead() {
+        return new StringList(list).insert(0, FRAGMENT);
+    }
+
+    @Benchmark
+    public StringList insertMiddle() {
+        return new StringList(list).insert(size / 2, FRAGMENT);
+    }
+
+    @Benchmark
+    public StringList insertTail() {
+        return new StringList(list).insert(size - 1, FRAGMENT);
+    }
+
+    /**
+     * Вставка фрагмента и чтение символа вперемешку на строке, растущей всю итерацию.
+     * Обе операции проходят по дереву O(log n) узлов, вставка ещё копирует часть
+     * одного блока, поэтому время растёт с size медленнее, чем линейно
+     */
+    @Benchmark
+    public char insertCharAtInterleaved() {
+        int index = indices[next++ & (indices.length - 1)];
+        growing.insert(index % growing.length(), FRAGMENT);
+        return growing.charAt(indices[next & (indices.length - 1)] % growing.length());
+    }
+
+    @Benchmark
+    public StringList appendChain() {
+        StringList copy = new StringList(list);
+        for (int i = 0; i < CHAIN_LENGTH; i++)
+            copy.append(FRAGMENT);
+        return copy;
+    }
+
+    @Benchmark
+    public StringList substring() {
+        return list.substring(size / 4, size - size / 4);
+    }
+
+    @Benchmark
+    public String toStringBenchmark() {
+        return list.toString();
+    }
+
+    /**
+     * Сборка строки длины size из фрагментов по 16 символов через {@link StringList#append(String)}.
+     * Вместе с {@link #assembleBuilder()} и {@link #assembleBuilderRelease()} сравнивает
+     * выделение памяти на операцию, профилировщик gc выводит его как gc.alloc.rate.norm
+     */
+    @Benchmark
+    public int assembleAppend() {
+        StringList result = new StringList();
+        for (int i = fragments(); i > 0; i--)
+            result.append(FRAGMENT);
+        return result.length();
+    }
+
+    /**
+     * Сборка той же строки через {@link StringList.Builder}
+     */
+    @Benchmark
+    public int assembleBuilder() {
+        StringList.Builder builder = new StringList.Builder();
+        for (int i = fragments(); i > 0; i--)
+            builder.append(FRAGMENT);
+        return builder.build().length();
+    }
+
+    /**
+     * Сборка той же строки через {@link StringList.Builder} с возвратом блоков
+     * в пул потока через {@link StringList#release()}, так что следующая сборка
+     * берёт массивы из пула
+     */
+    @Benchmark
+    public int assembleBuilderRelease() {
+        StringList.Builder builder = new StringList.Builder();
+        for (int i = fragments(); i > 0; i--)
+            builder.append(FRAGMENT);
+        StringList result = builder.build();
+        int length = result.length();
+        result.release();
+        return length;
+    }
+
+    private int fragments() {
+        return Math.max(size / FRAGMENT.length(), 1);
+    }
+}
@@ -0,0 +1,462 @@
+package utils;
+
+import java.util.AbstractQueue;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Циклическая очередь объектов с блокировкой, реализующая {@link BlockingQueue}.
+ * <p>
+ * Элементы хранятся в кольцевом массиве, как и в {@link CyclicQueue}, поэтому
+ * добавление элемента не создаёт узлов. Голова, хвост и количество элементов
+ * хранятся отдельно, и все ячейки массива используются. Забранные ячейки
+ * обнуляются, чтобы сборщик мусора мог освободить элементы.
+ * Null-элементы не допускаются. Итератор обходит снимок очереди,
+ * сделанный при его создании. Каждому добавленному элементу присваивается
+ * порядковый номер, по которому {@link Iterator#remove()} находит именно тот
+ * элемент, который вернул итератор, даже если тот же объект лежит в очереди несколько раз
+ *
+ * @param <E> тип элементов
+ * @author Aleksei Vokhmin
+ */
+public class BlockingCyclicQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+    /**
+     * Размер очереди по умолчанию
+     */
+    public static final int DEFAULT_CAPACITY = 10;
+
+    /**
+     * Позиция первого элемента
+     */
+    private int _head;
+
+    /**
+     * Позиция, в которую будет добавлен следующий элемент
+     */
+    private int _tail;
+
+    /**
+     * Количество элементов
+     */
+    private int _count;
+
+    /**
+     * Порядковый номер следующего добавленного элемента
+     */
+    private long _nextNumber;
+
+    private final Object[] queue;
+
+    /**
+     * Порядковые номера элементов в тех же ячейках, что и элементы
+     */
+    private final long[] numbers;
+    private final ReentrantLock queueLock = new ReentrantLock();
+    private final Condition insertCondition = queueLock.newCondition();
+    private final Condition removeCondition = queueLock.newCondition();
+
+    /**
+     * Стандартный конструктор с {@link #DEFAULT_CAPACITY} элементами
+     */
+    public BlockingCyclicQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Конструктор с указанным размером
+     *
+     * @param capacity размер очереди
+     * @throws IllegalArgumentException если размер меньше 1
+     */
+    public BlockingCyclicQueue(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Wrong capacity!");
+        queue = new Object[capacity];
+        numbers = new long[capacity];
+    }
+
+    @Override
+    public boolean offer(E e) {
+        Objects.requireNonNull(e);
+        queueLock.lock();
+        try {
+            if (_count == queue.length)
+                return false;
+            enqueue(e);
+            return true;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        Objects.requireNonNull(e);
+        long nanos = unit.toNanos(timeout);
+        queueLock.lockInterruptibly();
+        try {
+            while (_count == queue.length) {
+                if (nanos <= 0)
+                    return false;
+                nanos = insertCondition.awaitNanos(nanos);
+            }
+            enqueue(e);
+            return true;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        Objects.requireNonNull(e);
+        queueLock.lockInterruptibly();
+        try {
+            while (_count == queue.length)
+                insertCondition.await();
+            enqueue(e);
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    @Override
+    public E poll() {
+        queueLock.lock();
+        try {
+            return _count == 0 ? null : dequeue();
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        queueLock.lockInterruptibly();
+        try {
+            while (_count == 0) {
+                if (nanos <= 0)
+                    return null;
+                nanos = removeCondition.awaitNanos(nanos);
+            }
+            return dequeue();
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        queueLock.lockInterruptibly();
+        try {
+            while (_count == 0)
+                removeCondition.await();
+            return dequeue();
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    @Override
+    public E peek() {
+        queueLock.lock();
+        try {
+            return elementAt(_head);
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        queueLock.lock();
+        try {
+            return _count;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        queueLock.lock();
+        try {
+            return queue.length - _count;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Забрать без ожидания все элементы, но не больше указанного количества,
+     * за один захват блокировки с одним оповещением производителей
+     *
+     * @param c           коллекция для элементов
+     * @param maxElements наибольшее количество элементов
+     * @return количество забранных элементов
+     */
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        Objects.requireNonNull(c);
+        if (c == this)
+            throw new IllegalArgumentException("Cannot drain to itself");
+        queueLock.lock();
+        try {
+            int count = Math.min(maxElements, _count);
+            int drained = 0;
+            try {
+                for (; drained < count; drained++) {
+                    c.add(elementAt(_head));
+                    queue[_head] = null;
+                    _head = next(_head);
+                }
+            } finally {
+                if (drained > 0) {
+                    _count -= drained;
+                    insertCondition.signalAll();
+                }
+            }
+            return drained;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (o == null)
+            return false;
+        queueLock.lock();
+        try {
+            return indexOf(o) >= 0;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o == null)
+            return false;
+        queueLock.lock();
+        try {
+            int position = indexOf(o);
+            if (position < 0)
+                return false;
+            removeAt(position);
+            return true;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        queueLock.lock();
+        try {
+            for (; _count > 0; _count--) {
+                queue[_head] = null;
+                _head = next(_head);
+            }
+            _head = _tail = 0;
+            insertCondition.signalAll();
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    @Override
+    public Object[] toArray() {
+        queueLock.lock();
+        try {
+            Object[] array = new Object[_count];
+            int first = Math.min(_count, queue.length - _head);
+            System.arraycopy(queue, _head, array, 0, first);
+            System.arraycopy(queue, 0, array, first, _count - first);
+            return array;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Получить итератор по снимку очереди. Итератор не видит последующих изменений
+     * очереди, а его {@link Iterator#remove()} удаляет из очереди последний
+     * полученный элемент, если он ещё в очереди
+     *
+     * @return итератор
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new SnapshotIterator();
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+
+    /**
+     * Добавить элемент в конец очереди и оповестить потребителей,
+     * вызывается под блокировкой, место должно быть свободно
+     *
+     * @param e элемент
+     */
+    private void enqueue(E e) {
+        queue[_tail] = e;
+        numbers[_tail] = _nextNumber++;
+        _tail = next(_tail);
+        _count++;
+        removeCondition.signal();
+    }
+
+    /**
+     * Забрать элемент из начала очереди, обнулить его ячейку и оповестить производителей,
+     * вызывается под блокировкой, очередь не должна быть пуста
+     *
+     * @return элемент
+     */
+    private E dequeue() {
+        E e = elementAt(_head);
+        queue[_head] = null;
+        _head = next(_head);
+        _count--;
+        insertCondition.signal();
+        return e;
+    }
+
+    /**
+     * Найти позицию первого элемента, равного указанному, вызывается под блокировкой
+     *
+     * @param o элемент
+     * @return позиция в массиве или -1, если элемента нет
+     */
+    private int indexOf(Object o) {
+        for (int i = 0, position = _head; i < _count; i++, position = next(position))
+            if (o.equals(queue[position]))
+                return position;
+        return -1;
+    }
+
+    /**
+     * Удалить элемент с указанным порядковым номером, если он ещё в очереди.
+     * Номера растут от головы к хвосту, поэтому поиск останавливается
+     * на первом большем номере
+     *
+     * @param number порядковый номер
+     */
+    private void removeNumber(long number) {
+        queueLock.lock();
+        try {
+            for (int i = 0, position = _head; i < _count && numbers[position] <= number; i++, position = next(position))
+                if (numbers[position] == number) {
+                    removeAt(position);
+                    return;
+                }
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Удалить элемент в указанной позиции массива, сдвинув последующие элементы
+     * к голове, вызывается под блокировкой
+     *
+     * @param position позиция в массиве
+     */
+    private void removeAt(int position) {
+        for (int i = position, j = next(i); j != _tail; i = j, j = next(j)) {
+            queue[i] = queue[j];
+            numbers[i] = numbers[j];
+        }
+        _tail = _tail == 0 ? queue.length - 1 : _tail - 1;
+        queue[_tail] = null;
+        _count--;
+        insertCondition.signal();
+    }
+
+    /**
+     * Получить элемент в указанной позиции массива
+     *
+     * @param position позиция
+     * @return элемент или null, если ячейка пуста
+     */
+    @SuppressWarnings("unchecked")
+    private E elementAt(int position) {
+        return (E) queue[position];
+    }
+
+    /**
+     * Итератор по снимку очереди. Вместе с элементами запоминаются их порядковые номера
+     */
+    private class SnapshotIterator implements Iterator<E> {
+        private final Object[] snapshot;
+        private final long[] snapshotNumbers;
+        private int position = 0;
+
+        /**
+         * Индекс в снимке последнего полученного элемента или -1
+         */
+        private int last = -1;
+
+        /**
+         * Конструктор, снимающий копию очереди под блокировкой
+         */
+        SnapshotIterator() {
+            queueLock.lock();
+            try {
+                snapshot = toArray();
+                snapshotNumbers = new long[snapshot.length];
+                for (int i = 0, p = _head; i < snapshotNumbers.length; i++, p = BlockingCyclicQueue.this.next(p))
+                    snapshotNumbers[i] = numbers[p];
+            } finally {
+                queueLock.unlock();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < snapshot.length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            last = position++;
+            return (E) snapshot[last];
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0)
+                throw new IllegalStateException();
+            removeNumber(snapshotNumbers[last]);
+            last = -1;
+        }
+    }
+
+    /**
+     * Получить следующую позицию после указанной
+     *
+     * @param position позиция
+     * @return следующая позиция
+     */
+    private int next(int position) {
+        return ++position == queue.length ? 0 : position;
+    }
+}
@@ -0,0 +1,298 @@
+package utils;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * Потокобезопасный вариант {@link StringList}.
+ * <p>
+ * Узлы дерева {@link StringList} не изменяются, пока они общие для нескольких списков,
+ * поэтому каждая версия строки публикуется как неизменяемый снимок через volatile поле.
+ * Читатели не берут блокировок: они читают снимок, актуальный на момент обращения,
+ * и никогда не ждут писателей. {@link #charAt(int)}, поиск и {@link #snapshot()}
+ * ничего не пишут в снимок, поэтому потоки-читатели не мешают друг другу.
+ * Писатели по очереди изменяют рабочую копию под блокировкой и публикуют новый снимок.
+ * Копия разделяет с предыдущей версией все узлы, кроме пути к изменённому блоку,
+ * поэтому запись стоит O(log n) и блокировка держится недолго
+ *
+ * @author Aleksei Vokhmin
+ */
+public class ConcurrentStringList implements CharSequence, Appendable {
+    /**
+     * Опубликованный снимок строки, после публикации он не изменяется
+     */
+    private volatile StringList _snapshot;
+
+    /**
+     * Рабочая копия, которую изменяют писатели
+     */
+    private StringList _buffer;
+
+    /**
+     * Блокировка писателей
+     */
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    /**
+     * Default constructor
+     */
+    public ConcurrentStringList() {
+        this(new StringList());
+    }
+
+    /**
+     * Конструктор, преобразующий стринг в объект класса {@link ConcurrentStringList}
+     *
+     * @param string строка
+     */
+    public ConcurrentStringList(String string) {
+        this(new StringList(string));
+    }
+
+    /**
+     * Конструктор, создающий потокобезопасную копию списка за O(1)
+     *
+     * @param stringList список
+     */
+    public ConcurrentStringList(StringList stringList) {
+        _buffer = new StringList(stringList);
+        _snapshot = new StringList(_buffer);
+    }
+
+    /**
+     * Получить текущий снимок строки. Снимок - независимая копия, его изменения
+     * не влияют на этот список
+     *
+     * @return копия строки
+     */
+    public StringList snapshot() {
+        return _snapshot.frozenCopy();
+    }
+
+    /**
+     * Атомарно выполнить несколько изменений. Читатели увидят либо строку до
+     * изменений, либо после всех изменений. Если действие выбросит исключение,
+     * то строка останется прежней
+     *
+     * @param action действие над рабочей копией строки
+     * @return ссылка на текущий объект
+     */
+    public ConcurrentStringList update(Consumer<StringList> action) {
+        writeLock.lock();
+        try {
+            try {
+                action.accept(_buffer);
+            } catch (RuntimeException | Error e) {
+                _buffer = _snapshot.frozenCopy();
+                throw e;
+            }
+            _snapshot = new StringList(_buffer);
+        } finally {
+            writeLock.unlock();
+        }
+        return this;
+    }
+
+    //--------------------------------Writers-----------------------------------
+
+    /**
+     * Добавить строку в конец списка
+     *
+     * @param string строка
+     * @return ссылка на текущий объект
+     */
+    public ConcurrentStringList append(String string) {
+        return update(buffer -> buffer.append(string));
+    }
+
+    /**
+     * Добавить список {@link StringList} в конец списка
+     *
+     * @param stringList список
+     * @return ссылка на текущий объект
+     */
+    public ConcurrentStringList append(StringList stringList) {
+        return update(buffer -> buffer.append(stringList));
+    }
+
+    @Override
+    public ConcurrentStringList append(CharSequence csq) {
+        return update(buffer -> buffer.append(csq));
+    }
+
+    @Override
+    public ConcurrentStringList append(CharSequence csq, int start, int end) {
+        return update(buffer -> buffer.append(csq, start, end));
+    }
+
+    @Override
+    public ConcurrentStringList append(char c) {
+        return update(buffer -> buffer.append(c));
+    }
+
+    /**
+     * Заместить символ в указанном месте
+     *
+     * @param index  индекс символа
+     * @param symbol символ для замещения
+     * @return ссылка на текущий объект
+     */
+    public ConcurrentStringList setCharAt(int index, char symbol) {
+        return update(buffer -> buffer.setCharAt(index, symbol));
+    }
+
+    /**
+     * Вставить строку после указанного символа
+     *
+     * @param index  индекс символа
+     * @param string строка для вставки
+     * @return ссылка на текущий объект
+     */
+    public ConcurrentStringList insert(int index, String string) {
+        return update(buffer -> buffer.insert(index, string));
+    }
+
+    /**
+     * Вставить связный список {@link StringList} после указанного символа
+     *
+     * @param index      индекс символа
+     * @param stringList список для вставки
+     * @return ссылка на текущий объект
+     */
+    public ConcurrentStringList insert(int index, StringList stringList) {
+        return update(buffer -> buffer.insert(index, stringList));
+    }
+
+    /**
+     * Удалить символы в указанных границах
+     *
+     * @param beginIndex начальный индекс
+     * @param endIndex   конечный индекс
+     * @return ссылка на текущий объект
+     */
+    public ConcurrentStringList delete(int beginIndex, int endIndex) {
+        return update(buffer -> buffer.delete(beginIndex, endIndex));
+    }
+
+    /**
+     * Заменить символы в указанных границах последовательностью символов
+     *
+     * @param beginIndex начальный индекс
+     * @param endIndex   конечный индекс
+     * @param str        последовательность для замены
+     * @return ссылка на текущий объект
+     */
+    public ConcurrentStringList replace(int beginIndex, int endIndex, CharSequence str) {
+        return update(buffer -> buffer.replace(beginIndex, endIndex, str));
+    }
+
+    /**
+     * Заменить все непересекающиеся вхождения подстроки
+     *
+     * @param target      подстрока
+     * @param replacement замена
+     * @return ссылка на текущий объект
+     */
+    public ConcurrentStringList replaceAll(CharSequence target, CharSequence replacement) {
+        return update(buffer -> buffer.replaceAll(target, replacement));
+    }
+
+    //--------------------------------Readers-----------------------------------
+
+    @Override
+    public int length() {
+        return _snapshot.length();
+    }
+
+    /**
+     * Получить символ из текущего снимка без блокировок. Для последовательного
+     * чтения многих символов выгоднее один раз взять {@link #snapshot()}
+     *
+     * @param index индекс символа
+     * @return символ
+     */
+    @Override
+    public char charAt(int index) {
+        return _snapshot.charAtShared(index);
+    }
+
+    /**
+     * Получить подпоследовательность текущего снимка. Она не изменяется
+     * при последующих изменениях списка
+     *
+     * @param start начальный индекс
+     * @param end   конечный индекс
+     * @return подпоследовательность символов
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return snapshot().subSequence(start, end);
+    }
+
+    /**
+     * Получить подстроку текущего снимка в виде объекта {@link StringList}
+     *
+     * @param beginIndex начальный индекс
+     * @param endIndex   конечный индекс
+     * @return подстрока
+     */
+    public StringList substring(int beginIndex, int endIndex) {
+        return snapshot().substring(beginIndex, endIndex);
+    }
+
+    @Override
+    public IntStream chars() {
+        return snapshot().chars();
+    }
+
+    @Override
+    public IntStream codePoints() {
+        return snapshot().codePoints();
+    }
+
+    /**
+     * Найти первое вхождение подстроки в текущем снимке
+     *
+     * @param str подстрока
+     * @return индекс начала вхождения или -1, если подстрока не найдена
+     */
+    public int indexOf(CharSequence str) {
+        return _snapshot.indexOf(str);
+    }
+
+    /**
+     * Узнать, содержит ли текущий снимок подстроку
+     *
+     * @param str подстрока
+     * @return true, если подстрока найдена
+     */
+    public boolean contains(CharSequence str) {
+        return _snapshot.contains(str);
+    }
+
+    //--------------------------Object method overrides-------------------------
+
+    /**
+     * Переопределение метода.
+     *
+     * @return текущий снимок в виде объекта String
+     */
+    @Override
+    public String toString() {
+        return _snapshot.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ConcurrentStringList that = (ConcurrentStringList) o;
+        return _snapshot.equals(that._snapshot);
+    }
+
+    @Override
+    public int hashCode() {
+        return _snapshot.hashCode();
+    }
+}
@@ -1,22 +1,59 @@
 package utils;
 
+import java.util.OptionalInt;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
- * Класс, представляющий собой циклический список
+ * Класс, представляющий собой циклический список.
+ * <p>
+ * Голова, хвост и количество элементов хранятся отдельно, поэтому очередь
+ * любого размера использует все ячейки. Растущая очередь, созданная с наибольшим
+ * размером больше начального, при заполнении удваивает массив вместо ожидания,
+ * пока не достигнет наибольшего размера, а когда занята не больше чем на четверть,
+ * уменьшает его вдвое, но не меньше начального размера.
+ * <p>
+ * Операции журналируются через {@link Logger} на уровне {@link Level#FINE},
+ * а содержимое очереди - на уровне {@link Level#FINEST}. По умолчанию
+ * эти уровни выключены, и сообщения не собираются вовсе
  *
  * @author Aleksei Vokhmin
  */
 public class CyclicQueue {
-    private int _head, _tail;
-    private final int[] queue;
+    /**
+     * Время ожидания {@link #insert(int)} и {@link #remove()} по умолчанию, в секундах
+     */
+    public static final long DEFAULT_TIMEOUT = 5;
+
+    private static final Logger LOGGER = Logger.getLogger(CyclicQueue.class.getName());
+
+    /**
+     * Позиция первого элемента
+     */
+    private int _head;
+
+    /**
+     * Позиция, в которую будет добавлен следующий элемент
+     */
+    private int _tail;
+
+    /**
+     * Количество элементов
+     */
+    private int _count;
+
+    private int[] queue;
+    private final int initialCapacity;
+    private final int maxCapacity;
     private final ReentrantLock queueLock;
     private final Condition insertCondition;
     private final Condition removeCondition;
+    private final long timeoutNanos;
+    private final boolean trackRemoves;
     private boolean prevWasRemove = false;
-    private final int SIZE;
 
     /**
      * Стандартнй конструктор с 10 элементами
@@ -29,96 +66,510 @@ public class CyclicQueue {
      * Конструктор с указанным размером
      *
      * @param SIZE размер очереди
+     * @throws IllegalArgumentException если размер меньше 1
      */
     public CyclicQueue(int SIZE) {
+        this(SIZE, DEFAULT_TIMEOUT, TimeUnit.SECONDS, true);
+    }
+
+    /**
+     * Конструктор с указанным размером, временем ожидания {@link #insert(int)}
+     * и {@link #remove()} и отслеживанием удалений
+     *
+     * @param SIZE         размер очереди
+     * @param timeout      время ожидания
+     * @param unit         единица измерения времени ожидания
+     * @param trackRemoves true, если нужно отмечать удаления для {@link #isPrevWasRemove()}
+     * @throws IllegalArgumentException если размер меньше 1 или время ожидания отрицательное
+     */
+    public CyclicQueue(int SIZE, long timeout, TimeUnit unit, boolean trackRemoves) {
+        this(SIZE, SIZE, timeout, unit, trackRemoves);
+    }
+
+    /**
+     * Конструктор растущей очереди. Очередь начинает с указанного размера
+     * и при заполнении удваивается, пока не достигнет наибольшего размера.
+     * Если наибольший размер равен начальному, то очередь не растёт
+     *
+     * @param SIZE         начальный размер очереди
+     * @param maxSize      наибольший размер очереди
+     * @param timeout      время ожидания
+     * @param unit         единица измерения времени ожидания
+     * @param trackRemoves true, если нужно отмечать удаления для {@link #isPrevWasRemove()}
+     * @throws IllegalArgumentException если размеры неверны или время ожидания отрицательное
+     */
+    public CyclicQueue(int SIZE, int maxSize, long timeout, TimeUnit unit, boolean trackRemoves) {
+        if (SIZE < 1 || maxSize < SIZE)
+            throw new IllegalArgumentException("Wrong capacity!");
+        if (timeout < 0)
+            throw new IllegalArgumentException("Wrong timeout!");
         queue = new int[SIZE];
         queueLock = new ReentrantLock();
         insertCondition = queueLock.newCondition();
         removeCondition = queueLock.newCondition();
-        this.SIZE = SIZE;
-        _tail = 9;
+        timeoutNanos = unit.toNanos(timeout);
+        this.trackRemoves = trackRemoves;
+        initialCapacity = SIZE;
+        maxCapacity = maxSize;
         _head = 0;
+        _tail = 0;
+        _count = 0;
     }
 
     /**
-     * Добавить новый элемент, если по истечении 5 секунд не удаётся его добавить,
-     * то вызываем RuntimeException
+     * Добавить новый элемент, если по истечении времени ожидания не удаётся его добавить,
+     * то вызываем RuntimeException. Если поток прерван, то флаг прерывания
+     * восстанавливается и тоже вызывается RuntimeException
+     *
+     * @param value элемент
      */
     public void insert(int value) {
-        queueLock.lock();
+        boolean inserted;
+        try {
+            inserted = offer(value, timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Cannot insert new Item", e);
+        }
+        if (!inserted)
+            throw new RuntimeException("Cannot insert new Item");
+    }
+
+    /**
+     * Удалить элемент, если по истечении времени ожидания не удаётся его удалить,
+     * то вызываем RuntimeException. Если поток прерван, то флаг прерывания
+     * восстанавливается и тоже вызывается RuntimeException
+     *
+     * @return удалённый элемент
+     */
+    public int remove() {
+        OptionalInt value;
         try {
-            while (isFull())
-                if (!insertCondition.await(5, TimeUnit.SECONDS))
-                    throw new RuntimeException("Cannot insert new Item");
-
-            _tail = next(_tail);
-            queue[_tail] = value;
-            System.out.println(Thread.currentThread().getName() + " added item " + value + " to position " + _tail);
-            System.out.println(this);
-            removeCondition.signalAll();
+            value = poll(timeoutNanos, TimeUnit.NANOSECONDS);
         } catch (InterruptedException e) {
-            e.printStackTrace();
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Cannot remove Item", e);
+        }
+        if (value.isEmpty())
+            throw new RuntimeException("Cannot remove Item");
+        return value.getAsInt();
+    }
+
+    /**
+     * Добавить элемент без ожидания
+     *
+     * @param value элемент
+     * @return true, если элемент добавлен, false, если очередь полна
+     */
+    public boolean offer(int value) {
+        queueLock.lock();
+        try {
+            if (ensureRoom(1) == 0)
+                return false;
+            enqueue(value);
+            return true;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Добавить элемент, ожидая места в очереди не дольше указанного времени
+     *
+     * @param value   элемент
+     * @param timeout время ожидания
+     * @param unit    единица измерения времени ожидания
+     * @return true, если элемент добавлен, false, если время ожидания истекло
+     * @throws InterruptedException если поток прерван во время ожидания
+     */
+    public boolean offer(int value, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        queueLock.lockInterruptibly();
+        try {
+            while (ensureRoom(1) == 0) {
+                if (nanos <= 0)
+                    return false;
+                nanos = insertCondition.awaitNanos(nanos);
+            }
+            enqueue(value);
+            return true;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Добавить элемент, ожидая места в очереди сколько потребуется
+     *
+     * @param value элемент
+     * @throws InterruptedException если поток прерван во время ожидания
+     */
+    public void put(int value) throws InterruptedException {
+        queueLock.lockInterruptibly();
+        try {
+            while (ensureRoom(1) == 0)
+                insertCondition.await();
+            enqueue(value);
         } finally {
             queueLock.unlock();
         }
     }
 
     /**
-     * Удалить элемент, если по истечении 5 секунд не удаётся его удалить,
-     * то вызываем RuntimeException
+     * Забрать элемент без ожидания
+     *
+     * @return элемент или пустой {@link OptionalInt}, если очередь пуста
      */
-    public void remove() {
+    public OptionalInt poll() {
         queueLock.lock();
         try {
-            while (isEmpty())
-                if (!removeCondition.await(5, TimeUnit.SECONDS))
-                    throw new RuntimeException("Cannot remove Item");
+            return _count == 0 ? OptionalInt.empty() : OptionalInt.of(dequeue());
+        } finally {
+            queueLock.unlock();
+        }
+    }
 
-            prevWasRemove = true;
-            int remVal = queue[_head];
-            System.out.println(Thread.currentThread().getName() + " removed item " + remVal + " from position " + _head);
-            _head = next(_head);
-            System.out.println(this);
-            insertCondition.signalAll();
+    /**
+     * Забрать элемент, ожидая его появления не дольше указанного времени
+     *
+     * @param timeout время ожидания
+     * @param unit    единица измерения времени ожидания
+     * @return элемент или пустой {@link OptionalInt}, если время ожидания истекло
+     * @throws InterruptedException если поток прерван во время ожидания
+     */
+    public OptionalInt poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        queueLock.lockInterruptibly();
+        try {
+            while (_count == 0) {
+                if (nanos <= 0)
+                    return OptionalInt.empty();
+                nanos = removeCondition.awaitNanos(nanos);
+            }
+            return OptionalInt.of(dequeue());
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Забрать элемент, ожидая его появления сколько потребуется
+     *
+     * @return элемент
+     * @throws InterruptedException если поток прерван во время ожидания
+     */
+    public int take() throws InterruptedException {
+        queueLock.lockInterruptibly();
+        try {
+            while (_count == 0)
+                removeCondition.await();
+            return dequeue();
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Добавить элементы массива. Элементы копируются непрерывными участками,
+     * не больше двух копирований на участок с учётом перехода через конец массива.
+     * Каждый участок добавляется за один захват блокировки с одним оповещением потребителей,
+     * растущая очередь сразу увеличивается под весь массив, если позволяет наибольший размер.
+     * <p>
+     * Добавление может быть частичным: участки, добавленные до истечения времени ожидания,
+     * остаются в очереди и уже видны потребителям. Метод возвращает количество добавленных
+     * элементов, так что повторять нужно только элементы начиная с src[off + результат].
+     * Время ожидания общее для всего вызова. Если поток прерван, когда часть элементов
+     * уже добавлена, то флаг прерывания восстанавливается и возвращается их количество
+     *
+     * @param src массив элементов
+     * @param off индекс первого элемента в массиве
+     * @param len количество элементов
+     * @return количество добавленных элементов, меньше len, если истекло время ожидания
+     * @throws IllegalArgumentException если участок выходит за границы массива
+     * @throws InterruptedException     если поток прерван до добавления первого элемента
+     */
+    public int insertAll(int[] src, int off, int len) throws InterruptedException {
+        if (off < 0 || len < 0 || len > src.length - off)
+            throw new IllegalArgumentException("Wrong range!");
+        long nanos = timeoutNanos;
+        int inserted = 0;
+        try {
+            while (inserted < len) {
+                queueLock.lockInterruptibly();
+                try {
+                    int room;
+                    while ((room = ensureRoom(len - inserted)) == 0) {
+                        if (nanos <= 0)
+                            return inserted;
+                        nanos = insertCondition.awaitNanos(nanos);
+                    }
+
+                    int count = Math.min(len - inserted, room);
+                    copyIn(src, off + inserted, count);
+                    inserted += count;
+                    if (LOGGER.isLoggable(Level.FINE))
+                        log("added " + count + " items");
+                    removeCondition.signalAll();
+                } finally {
+                    queueLock.unlock();
+                }
+            }
         } catch (InterruptedException e) {
-            e.printStackTrace();
+            if (inserted == 0)
+                throw e;
+            Thread.currentThread().interrupt();
+        }
+        return inserted;
+    }
+
+    /**
+     * Забрать без ожидания все элементы, но не больше указанного количества
+     *
+     * @param dst массив для элементов, элементы пишутся с начала массива
+     * @param max наибольшее количество элементов
+     * @return количество забранных элементов
+     * @throws IllegalArgumentException если количество отрицательное или больше длины массива
+     */
+    public int drainTo(int[] dst, int max) {
+        if (max < 0 || max > dst.length)
+            throw new IllegalArgumentException("Wrong count!");
+        queueLock.lock();
+        try {
+            return drain(dst, max);
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Забрать от min до max элементов. Ждём, пока в очереди не наберётся min элементов
+     * или не истечёт время ожидания, после чего забираем все элементы, но не больше max.
+     * По истечении времени забранных элементов может оказаться меньше min
+     *
+     * @param dst     массив для элементов, элементы пишутся с начала массива
+     * @param min     количество элементов, которого ждём
+     * @param max     наибольшее количество элементов
+     * @param timeout время ожидания
+     * @param unit    единица измерения времени ожидания
+     * @return количество забранных элементов
+     * @throws IllegalArgumentException если количества неверны или min больше вместимости очереди
+     * @throws InterruptedException     если поток прерван во время ожидания
+     */
+    public int take(int[] dst, int min, int max, long timeout, TimeUnit unit) throws InterruptedException {
+        if (min < 0 || min > max || max > dst.length || min > maxCapacity)
+            throw new IllegalArgumentException("Wrong count!");
+        long nanos = unit.toNanos(timeout);
+        queueLock.lockInterruptibly();
+        try {
+            while (_count < min && nanos > 0)
+                nanos = removeCondition.awaitNanos(nanos);
+            return drain(dst, max);
         } finally {
             queueLock.unlock();
         }
     }
 
     /**
-     * Проверяем полность очереди, если она полная, то
-     * говорим что контекст изменился
+     * Проверяем полность очереди. Растущая очередь полна,
+     * только когда заняты все ячейки наибольшего размера
      *
      * @return true, если очередь полная
      */
     public boolean isFull() {
-        return next(next(_tail)) == _head;
+        queueLock.lock();
+        try {
+            return _count == maxCapacity;
+        } finally {
+            queueLock.unlock();
+        }
     }
 
     /**
-     * Проверяем пустоту очереди, если она пуста, то
-     * говорим что контекст изменился
+     * Проверяем пустоту очереди
      *
      * @return true, если очередь пуста
      */
     public boolean isEmpty() {
-        return next(_tail) == _head;
+        return size() == 0;
+    }
+
+    /**
+     * Получить количество элементов в очереди
+     *
+     * @return количество элементов
+     */
+    public int size() {
+        queueLock.lock();
+        try {
+            return _count;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Получить текущий размер очереди. У растущей очереди он меняется
+     * от начального до наибольшего
+     *
+     * @return размер очереди
+     */
+    public int capacity() {
+        queueLock.lock();
+        try {
+            return queue.length;
+        } finally {
+            queueLock.unlock();
+        }
     }
 
     @Override
     public String toString() {
-        if (isEmpty())
-            return "Queue is empty!";
-        StringBuilder stringBuilder = new StringBuilder();
+        queueLock.lock();
+        try {
+            if (_count == 0)
+                return "Queue is empty!";
+            StringBuilder stringBuilder = new StringBuilder();
+            for (int i = 0, position = _head; i < _count; i++, position = next(position)) {
+                if (i > 0)
+                    stringBuilder.append(" ");
+                stringBuilder.append(queue[position]);
+            }
+            return stringBuilder.toString();
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Добавить элемент в конец очереди и оповестить потребителей,
+     * вызывается под блокировкой, место должно быть свободно
+     *
+     * @param value элемент
+     */
+    private void enqueue(int value) {
+        if (LOGGER.isLoggable(Level.FINE))
+            log("added item " + value + " to position " + _tail);
+        queue[_tail] = value;
+        _tail = next(_tail);
+        _count++;
+        removeCondition.signalAll();
+    }
+
+    /**
+     * Забрать элемент из начала очереди и оповестить производителей,
+     * вызывается под блокировкой, очередь не должна быть пуста
+     *
+     * @return элемент
+     */
+    private int dequeue() {
+        int value = queue[_head];
+        if (LOGGER.isLoggable(Level.FINE))
+            log("removed item " + value + " from position " + _head);
+        _head = next(_head);
+        _count--;
+        shrink();
+        if (trackRemoves)
+            prevWasRemove = true;
+        insertCondition.signalAll();
+        return value;
+    }
+
+    /**
+     * Записать операцию в журнал, а на уровне {@link Level#FINEST} - и содержимое очереди.
+     * Вызывается под блокировкой после проверки уровня {@link Level#FINE}
+     *
+     * @param message описание операции
+     */
+    private void log(String message) {
+        LOGGER.fine(Thread.currentThread().getName() + " " + message);
+        if (LOGGER.isLoggable(Level.FINEST))
+            LOGGER.finest(toString());
+    }
+
+    /**
+     * Получить количество свободных ячеек для добавления указанного количества элементов.
+     * Растущая очередь при нехватке места увеличивается как минимум вдвое,
+     * но не больше наибольшего размера. Вызывается под блокировкой
+     *
+     * @param wanted сколько элементов нужно добавить
+     * @return количество свободных ячеек, 0, если очередь полна
+     */
+    private int ensureRoom(int wanted) {
+        int room = queue.length - _count;
+        if (room < wanted && queue.length < maxCapacity) {
+            long capacity = Math.max(2L * queue.length, (long) _count + wanted);
+            resize((int) Math.min(capacity, maxCapacity));
+            room = queue.length - _count;
+        }
+        return room;
+    }
+
+    /**
+     * Уменьшить растущую очередь вдвое, если она занята не больше чем на четверть,
+     * но не меньше начального размера. Вызывается под блокировкой
+     */
+    private void shrink() {
+        if (queue.length > initialCapacity && _count <= queue.length / 4)
+            resize(Math.max(queue.length / 2, initialCapacity));
+    }
+
+    /**
+     * Переложить элементы в новый массив указанного размера, начиная с нулевой ячейки.
+     * Вызывается под блокировкой
+     *
+     * @param capacity новый размер, не меньше количества элементов
+     */
+    private void resize(int capacity) {
+        int[] array = new int[capacity];
+        int first = Math.min(_count, queue.length - _head);
+        System.arraycopy(queue, _head, array, 0, first);
+        System.arraycopy(queue, 0, array, first, _count - first);
+        if (LOGGER.isLoggable(Level.FINE))
+            LOGGER.fine("Queue resized from " + queue.length + " to " + capacity);
+        queue = array;
+        _head = 0;
+        _tail = _count == capacity ? 0 : _count;
+    }
 
-        int i;
-        for (i = _head; i != _tail; i = next(i))
-            stringBuilder.append(queue[i]).append(" ");
-        stringBuilder.append(queue[i]);
+    /**
+     * Скопировать элементы в конец очереди, место должно быть свободно
+     *
+     * @param src   массив элементов
+     * @param off   индекс первого элемента в массиве
+     * @param count количество элементов
+     */
+    private void copyIn(int[] src, int off, int count) {
+        int first = Math.min(count, queue.length - _tail);
+        System.arraycopy(src, off, queue, _tail, first);
+        System.arraycopy(src, off + first, queue, 0, count - first);
+        _tail = (int) (((long) _tail + count) % queue.length);
+        _count += count;
+    }
 
-        return stringBuilder.toString();
+    /**
+     * Забрать элементы из начала очереди и оповестить производителей,
+     * вызывается под блокировкой
+     *
+     * @param dst массив для элементов
+     * @param max наибольшее количество элементов
+     * @return количество забранных элементов
+     */
+    private int drain(int[] dst, int max) {
+        int count = Math.min(max, _count);
+        if (count == 0)
+            return 0;
+        int first = Math.min(count, queue.length - _head);
+        System.arraycopy(queue, _head, dst, 0, first);
+        System.arraycopy(queue, 0, dst, first, count - first);
+        _head = (int) (((long) _head + count) % queue.length);
+        _count -= count;
+        shrink();
+        if (trackRemoves)
+            prevWasRemove = true;
+        if (LOGGER.isLoggable(Level.FINE))
+            log("removed " + count + " items");
+        insertCondition.signalAll();
+        return count;
     }
 
     /**
@@ -128,11 +579,12 @@ public class CyclicQueue {
      * @return следующая позиция
      */
     private int next(int position) {
-        return (position + 1) % SIZE;
+        return ++position == queue.length ? 0 : position;
     }
 
     /**
-     * Смотрим, изменился ли контекст
+     * Смотрим, изменился ли контекст. Если отслеживание удалений выключено
+     * в конструкторе, то всегда false
      *
      * @return true, если контекст был изменён
      */
@@ -0,0 +1,660 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Список значений типа int, повторяющий {@link SortedList} без упаковки:
+ * элементы хранятся в массиве int[], поэтому вставка, поиск и сортировка
+ * не создают объектов, а просмотр идёт по непрерывному участку памяти.
+ * Значения сравниваются так же, как в {@link Integer#compare(int, int)}
+ * <p>
+ * В упорядоченном режиме список сохраняет порядок элементов при каждой вставке,
+ * элементы добавляются методом {@link #add(int)}, а поиск выполняется двоичным поиском за O(log n).
+ * Элементы хранятся в массиве с разрывом, как в {@link SortedList}
+ *
+ * @author Aleksei Vokhmin
+ */
+public class IntSortedList {
+
+    /**
+     * Вместимость списка по умолчанию
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+    /**
+     * Наибольшая вместимость массива
+     */
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+    /**
+     * Основной массив данных для работы с разрывом, заменяется при росте списка
+     */
+    private int[] array;
+    /**
+     * Голова очереди
+     */
+    private int _tail;
+    /**
+     * Позиция начала разрыва. Элемент с позицией i хранится в array[i],
+     * если i меньше начала разрыва, иначе - в array[i + длина разрыва]
+     */
+    private int _gapStart;
+    /**
+     * Упорядоченный режим: список поддерживает порядок элементов при каждой вставке
+     */
+    private final boolean sorted;
+    /**
+     * Длина начала списка, которое точно отсортировано. Элементы после него
+     * вливаются в отсортированное начало при следующей сортировке
+     */
+    private int _sortedEnd;
+
+    /**
+     * Конструктор пустого списка
+     */
+    public IntSortedList() {
+        this(false);
+    }
+
+    /**
+     * Конструктор пустого списка с указанным режимом работы
+     *
+     * @param sorted true для упорядоченного режима
+     */
+    public IntSortedList(boolean sorted) {
+        this(DEFAULT_CAPACITY, sorted);
+    }
+
+    /**
+     * Конструктор пустого списка с указанной начальной вместимостью и режимом работы
+     *
+     * @param capacity начальная вместимость
+     * @param sorted   true для упорядоченного режима
+     * @throws IllegalArgumentException если вместимость отрицательна
+     */
+    public IntSortedList(int capacity, boolean sorted) {
+        if (capacity < 0 || capacity > MAX_CAPACITY)
+            throw new IllegalArgumentException("Wrong capacity!");
+        this.array = new int[capacity];
+        this._tail = -1;
+        this._gapStart = 0;
+        this.sorted = sorted;
+    }
+
+    /**
+     * Узнать, работает ли список в упорядоченном режиме
+     *
+     * @return true, если список поддерживает порядок элементов
+     */
+    public boolean isSorted() {
+        return sorted;
+    }
+
+    /**
+     * Получить позицию конца списка +1
+     *
+     * @return конец списка +1
+     */
+    public int end() {
+        return _tail + 1;
+    }
+
+    /**
+     * Вставить элемент в указанную позицию
+     *
+     * @param value    элемент
+     * @param position позиция
+     * @throws IllegalArgumentException если в упорядоченном режиме вставка нарушит порядок
+     */
+    public void insert(int value, int position) {
+        if (checkPosition(position))
+            return;
+        if (sorted && (position > 0 && Integer.compare(get(position - 1), value) > 0
+                       || position <= _tail && Integer.compare(get(position), value) < 0))
+            throw new IllegalArgumentException("Wrong position!");
+        insertAt(value, position);
+        if (position < _sortedEnd) {
+            if ((position == 0 || Integer.compare(get(position - 1), value) <= 0)
+                && Integer.compare(get(position + 1), value) >= 0)
+                ++_sortedEnd;
+            else
+                _sortedEnd = position;
+        }
+    }
+
+    /**
+     * Добавить элемент в упорядоченный список. Позиция находится двоичным поиском
+     *
+     * @param value элемент
+     * @return позиция добавленного элемента
+     * @throws IllegalStateException если список не в упорядоченном режиме
+     */
+    public int add(int value) {
+        if (!sorted)
+            throw new IllegalStateException("List is not in sorted mode!");
+        int position = upperBound(value);
+        insertAt(value, position);
+        ++_sortedEnd;
+        return position;
+    }
+
+    /**
+     * Получить позицию указанного элемента. В упорядоченном режиме
+     * элемент ищется двоичным поиском, иначе - просмотром списка
+     *
+     * @param value элемент в списке
+     * @return позиция элемента, для равных элементов - первая из них
+     * @throws IllegalArgumentException если элемент не найден в списке
+     */
+    public int locate(int value) {
+        int position = indexOf(value);
+        if (position < 0)
+            throw new IllegalArgumentException("Wrong value!");
+        return position;
+    }
+
+    /**
+     * Узнать, есть ли элемент в списке
+     *
+     * @param value элемент
+     * @return true, если элемент найден
+     */
+    public boolean contains(int value) {
+        return indexOf(value) >= 0;
+    }
+
+    /**
+     * Получить наибольший элемент, не превосходящий указанный
+     *
+     * @param value элемент
+     * @return найденный элемент
+     * @throws IllegalArgumentException если такого элемента нет
+     */
+    public int floor(int value) {
+        if (sorted) {
+            int position = upperBound(value);
+            if (position == 0)
+                throw new IllegalArgumentException("Wrong value!");
+            return get(position - 1);
+        }
+        int found = -1;
+        for (int i = 0; i < _tail + 1; i++) {
+            int element = get(i);
+            if (Integer.compare(element, value) <= 0 && (found < 0 || Integer.compare(element, get(found)) > 0))
+                found = i;
+        }
+        if (found < 0)
+            throw new IllegalArgumentException("Wrong value!");
+        return get(found);
+    }
+
+    /**
+     * Получить наименьший элемент, не меньший указанного
+     *
+     * @param value элемент
+     * @return найденный элемент
+     * @throws IllegalArgumentException если такого элемента нет
+     */
+    public int ceiling(int value) {
+        if (sorted) {
+            int position = lowerBound(value);
+            if (position > _tail)
+                throw new IllegalArgumentException("Wrong value!");
+            return get(position);
+        }
+        int found = -1;
+        for (int i = 0; i < _tail + 1; i++) {
+            int element = get(i);
+            if (Integer.compare(element, value) >= 0 && (found < 0 || Integer.compare(element, get(found)) < 0))
+                found = i;
+        }
+        if (found < 0)
+            throw new IllegalArgumentException("Wrong value!");
+        return get(found);
+    }
+
+    /**
+     * Получить количество элементов в диапазоне [from, to)
+     *
+     * @param from нижняя граница, включительно
+     * @param to   верхняя граница, не включительно
+     * @return количество элементов
+     */
+    public int count(int from, int to) {
+        if (sorted)
+            return Math.max(lowerBound(to) - lowerBound(from), 0);
+        int count = 0;
+        for (int i = 0; i < _tail + 1; i++) {
+            int element = get(i);
+            if (Integer.compare(element, from) >= 0 && Integer.compare(element, to) < 0)
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * Получить элементы из диапазона [from, to) в виде нового списка
+     * того же режима, вместимость которого равна количеству элементов
+     *
+     * @param from нижняя граница, включительно
+     * @param to   верхняя граница, не включительно
+     * @return новый список
+     */
+    public IntSortedList range(int from, int to) {
+        int[] values;
+        if (sorted) {
+            int begin = lowerBound(from);
+            int end = Math.max(lowerBound(to), begin);
+            values = new int[end - begin];
+            for (int i = begin; i < end; i++)
+                values[i - begin] = get(i);
+        } else {
+            values = new int[count(from, to)];
+            int count = 0;
+            for (int i = 0; i < _tail + 1; i++) {
+                int element = get(i);
+                if (Integer.compare(element, from) >= 0 && Integer.compare(element, to) < 0)
+                    values[count++] = element;
+            }
+        }
+        IntSortedList list = new IntSortedList(0, sorted);
+        list.array = values;
+        list._tail = values.length - 1;
+        list._gapStart = values.length;
+        list._sortedEnd = sorted ? values.length : 0;
+        return list;
+    }
+
+    /**
+     * Добавить элементы массива за один проход: они дописываются в конец списка,
+     * а в упорядоченном режиме сортируются и вливаются в список за O(k log k + n)
+     *
+     * @param values элементы
+     */
+    public void addAll(int[] values) {
+        appendAll(values, values.length);
+    }
+
+    /**
+     * Слить с другим списком. Оба списка считаются упорядоченными: этот список
+     * сортируется, если он ещё не отсортирован, а элементы другого списка
+     * вливаются в него за линейное время, если другой список отсортирован.
+     * Другой список не изменяется
+     *
+     * @param other другой список
+     */
+    public void merge(IntSortedList other) {
+        sort();
+        int[] values = new int[other.end()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = other.get(i);
+        appendAll(values, values.length);
+        sortTail();
+    }
+
+    /**
+     * Удалить все элементы, подходящие под условие, за один проход
+     *
+     * @param filter условие удаления
+     * @return количество удалённых элементов
+     */
+    public int removeIf(IntPredicate filter) {
+        moveGap(_tail + 1);
+        int end = _tail + 1;
+        int kept = 0;
+        int sortedKept = 0;
+        int i = 0;
+        try {
+            for (; i < end; i++) {
+                int element = array[i];
+                if (!filter.test(element)) {
+                    if (i < _sortedEnd)
+                        sortedKept++;
+                    array[kept++] = element;
+                }
+            }
+        } finally {
+            if (i < end) {
+                System.arraycopy(array, i, array, kept, end - i);
+                if (i < _sortedEnd)
+                    sortedKept += _sortedEnd - i;
+                kept += end - i;
+            }
+            _sortedEnd = sortedKept;
+            _tail = kept - 1;
+            _gapStart = kept;
+        }
+        return end - kept;
+    }
+
+    /**
+     * Удалить элементы в позициях [from, to) за один сдвиг
+     *
+     * @param from начальная позиция, включительно
+     * @param to   конечная позиция, не включительно
+     * @throws IllegalArgumentException если позиции неверны
+     */
+    public void deleteRange(int from, int to) {
+        if (from < 0 || to > _tail + 1 || from > to)
+            throw new IllegalArgumentException("Wrong position!");
+        if (from < _sortedEnd)
+            _sortedEnd -= Math.min(to, _sortedEnd) - from;
+        moveGap(from);
+        _tail -= to - from;
+    }
+
+    /**
+     * Получить элемент в указаной позиции
+     *
+     * @param position позиция элемента
+     * @return элемент
+     * @throws IllegalArgumentException если позиция неверна
+     */
+    public int retrieve(int position) {
+        if (checkPosition(position))
+            throw new IllegalArgumentException("Wrong position!");
+        if (position > _tail)
+            throw new IllegalArgumentException("Wrong position!");
+        return get(position);
+    }
+
+    /**
+     * Удалить элемент в указанной позиции
+     *
+     * @param position позиция
+     */
+    public void delete(int position) {
+        if (checkPosition(position) || position > _tail)
+            return;
+        if (position < _sortedEnd)
+            --_sortedEnd;
+        moveGap(position);
+        --_tail;
+    }
+
+    /**
+     * Получить позицию следующего элемента
+     *
+     * @param position позиция элемента
+     * @return следующая позиция
+     * @throws IllegalArgumentException если позиция неверна
+     */
+    public int next(int position) {
+        if (checkPosition(position))
+            throw new IllegalArgumentException("Wrong position!");
+        if (position >= _tail + 1)
+            throw new IllegalArgumentException("There's no elements after!");
+        return position + 1;
+    }
+
+    /**
+     * Получить позицию предыдущего элемента
+     *
+     * @param position позиция элемента
+     * @return предыдущая позиция
+     * @throws IllegalArgumentException если позиция неверна
+     */
+    public int previous(int position) {
+        if (checkPosition(position))
+            throw new IllegalArgumentException("Wrong position!");
+        if (position == 0)
+            throw new IllegalArgumentException("There's no elements before!");
+        return position - 1;
+    }
+
+    /**
+     * Обнулить список
+     */
+    public void makeNull() {
+        _tail = -1;
+        _gapStart = 0;
+        _sortedEnd = 0;
+    }
+
+    /**
+     * Получить позицию первого элемента
+     *
+     * @return позиция первого элемента
+     */
+    public int first() {
+        return 0;
+    }
+
+    /**
+     * Показать список
+     */
+    public void printList() {
+        System.out.println(this);
+    }
+
+    /**
+     * Проверить позицию, если она не верна, то кинуть исключение
+     *
+     * @param position позиция для проверки
+     * @throws IllegalArgumentException если позиция неверна
+     */
+    private boolean checkPosition(int position) {
+        return position > _tail + 1 || position < 0;
+    }
+
+    /**
+     * Получить длину разрыва
+     *
+     * @return длина разрыва
+     */
+    private int gapLength() {
+        return array.length - _tail - 1;
+    }
+
+    /**
+     * Получить элемент по позиции, не проверяя её
+     *
+     * @param position позиция элемента
+     * @return элемент
+     */
+    private int get(int position) {
+        return position < _gapStart ? array[position] : array[position + gapLength()];
+    }
+
+    /**
+     * Найти позицию элемента
+     *
+     * @param value элемент
+     * @return позиция первого равного элемента или -1, если элемент не найден
+     */
+    private int indexOf(int value) {
+        if (sorted) {
+            int position = lowerBound(value);
+            return position <= _tail && Integer.compare(get(position), value) == 0 ? position : -1;
+        }
+        int gap = gapLength();
+        for (int i = 0; i < _gapStart; i++) {
+            if (Integer.compare(array[i], value) == 0)
+                return i;
+        }
+        for (int i = _gapStart + gap; i < array.length; i++) {
+            if (Integer.compare(array[i], value) == 0)
+                return i - gap;
+        }
+        return -1;
+    }
+
+    /**
+     * Вставить элемент в разрыв, перенесённый к позиции
+     *
+     * @param value    элемент
+     * @param position позиция
+     */
+    private void insertAt(int value, int position) {
+        if (gapLength() == 0)
+            grow();
+        moveGap(position);
+        array[_gapStart++] = value;
+        ++_tail;
+    }
+
+    /**
+     * Перенести разрыв к позиции, сдвинув только элементы между
+     * старым и новым положением разрыва
+     *
+     * @param position новая позиция начала разрыва
+     */
+    private void moveGap(int position) {
+        int gap = gapLength();
+        if (position < _gapStart)
+            System.arraycopy(array, position, array, position + gap, _gapStart - position);
+        else if (position > _gapStart)
+            System.arraycopy(array, _gapStart + gap, array, _gapStart, position - _gapStart);
+        _gapStart = position;
+    }
+
+    /**
+     * Увеличить массив в полтора раза, новое место становится разрывом
+     */
+    private void grow() {
+        ensureCapacity(array.length + 1L);
+    }
+
+    /**
+     * Увеличить массив не меньше чем до указанной вместимости и не меньше чем
+     * в полтора раза, новое место становится разрывом
+     *
+     * @param minCapacity наименьшая нужная вместимость
+     */
+    private void ensureCapacity(long minCapacity) {
+        int length = array.length;
+        if (minCapacity <= length)
+            return;
+        if (minCapacity > MAX_CAPACITY)
+            throw new OutOfMemoryError("IntSortedList capacity exceeds " + MAX_CAPACITY);
+        int capacity = (int) Math.min(Math.max(Math.max((long) length + (length >> 1), DEFAULT_CAPACITY), minCapacity),
+                MAX_CAPACITY);
+        array = Arrays.copyOf(array, capacity);
+        System.arraycopy(array, _gapStart, array, _gapStart + capacity - length, length - _gapStart);
+    }
+
+    /**
+     * Найти первую позицию, элемент в которой не меньше указанного.
+     * Используется в упорядоченном режиме
+     *
+     * @param value элемент
+     * @return позиция от 0 до end()
+     */
+    private int lowerBound(int value) {
+        int low = 0;
+        int high = _tail + 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (Integer.compare(get(middle), value) < 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Найти первую позицию, элемент в которой больше указанного.
+     * Используется в упорядоченном режиме
+     *
+     * @param value элемент
+     * @return позиция от 0 до end()
+     */
+    private int upperBound(int value) {
+        int low = 0;
+        int high = _tail + 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (Integer.compare(get(middle), value) <= 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Сортировка за O(n log n). Если начало списка уже отсортировано,
+     * то сортируются только добавленные после него элементы и вливаются в начало
+     * за O(k log k + n), где k - количество новых элементов.
+     * В упорядоченном режиме список уже отсортирован
+     */
+    public void sort() {
+        if (sorted || _sortedEnd == _tail + 1)
+            return;
+        sortTail();
+    }
+
+    /**
+     * Параллельная сортировка в пуле fork-join для больших списков.
+     * Небольшие списки сортируются в текущем потоке
+     */
+    public void parallelSort() {
+        if (sorted || _sortedEnd == _tail + 1)
+            return;
+        moveGap(_tail + 1);
+        Arrays.parallelSort(array, 0, _tail + 1);
+        _sortedEnd = _tail + 1;
+    }
+
+    /**
+     * Отсортировать неотсортированный конец списка и влить его в отсортированное начало
+     */
+    private void sortTail() {
+        if (_sortedEnd == _tail + 1)
+            return;
+        moveGap(_tail + 1);
+        if (_sortedEnd > 0)
+            mergeTail();
+        else
+            Arrays.sort(array, 0, _tail + 1);
+        _sortedEnd = _tail + 1;
+    }
+
+    /**
+     * Дописать элементы в конец списка. В упорядоченном режиме
+     * они сразу вливаются в список
+     *
+     * @param values элементы
+     * @param count  количество элементов
+     */
+    private void appendAll(int[] values, int count) {
+        ensureCapacity((long) _tail + 1 + count);
+        moveGap(_tail + 1);
+        System.arraycopy(values, 0, array, _tail + 1, count);
+        _tail += count;
+        _gapStart = _tail + 1;
+        if (sorted)
+            sortTail();
+    }
+
+    /**
+     * Отсортировать элементы после отсортированного начала и влить их в него,
+     * сливая с конца, чтобы дополнительная память понадобилась только под новые элементы.
+     * Разрыв должен находиться в конце списка
+     */
+    private void mergeTail() {
+        int end = _tail + 1;
+        Arrays.sort(array, _sortedEnd, end);
+        if (Integer.compare(array[_sortedEnd - 1], array[_sortedEnd]) <= 0)
+            return;
+        int[] tail = Arrays.copyOfRange(array, _sortedEnd, end);
+        int i = _sortedEnd - 1;
+        int j = tail.length - 1;
+        for (int k = end - 1; j >= 0; k--) {
+            if (i >= 0 && Integer.compare(array[i], tail[j]) > 0)
+                array[k] = array[i--];
+            else
+                array[k] = tail[j--];
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (_tail == -1) return "List is empty!";
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < _tail; i++)
+            sb.append(get(i)).append(" ");
+        sb.append(get(_tail));
+        return sb.toString();
+    }
+}
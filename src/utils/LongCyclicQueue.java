@@ -0,0 +1,378 @@
+package utils;
+
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Циклическая очередь значений long с блокировкой, например, отметок времени или смещений.
+ * <p>
+ * Значения хранятся в кольцевом массиве без упаковки. Голова, хвост и количество
+ * элементов хранятся отдельно, и все ячейки массива используются.
+ * Из операций {@link CyclicQueue} здесь есть offer, poll, put, take и пакетные
+ * insertAll, drainTo и take. Размер очереди постоянный, методов insert и remove
+ * со временем ожидания из конструктора нет, а insertAll ждёт места без ограничения времени
+ *
+ * @author Aleksei Vokhmin
+ */
+public class LongCyclicQueue {
+    /**
+     * Размер очереди по умолчанию
+     */
+    public static final int DEFAULT_CAPACITY = 10;
+
+    /**
+     * Позиция первого элемента
+     */
+    private int _head;
+
+    /**
+     * Позиция, в которую будет добавлен следующий элемент
+     */
+    private int _tail;
+
+    /**
+     * Количество элементов
+     */
+    private int _count;
+
+    private final long[] queue;
+    private final ReentrantLock queueLock = new ReentrantLock();
+    private final Condition insertCondition = queueLock.newCondition();
+    private final Condition removeCondition = queueLock.newCondition();
+
+    /**
+     * Стандартный конструктор с {@link #DEFAULT_CAPACITY} элементами
+     */
+    public LongCyclicQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Конструктор с указанным размером
+     *
+     * @param capacity размер очереди
+     * @throws IllegalArgumentException если размер меньше 1
+     */
+    public LongCyclicQueue(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Wrong capacity!");
+        queue = new long[capacity];
+    }
+
+    /**
+     * Добавить элемент без ожидания
+     *
+     * @param value элемент
+     * @return true, если элемент добавлен, false, если очередь полна
+     */
+    public boolean offer(long value) {
+        queueLock.lock();
+        try {
+            if (_count == queue.length)
+                return false;
+            enqueue(value);
+            return true;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Добавить элемент, ожидая места в очереди не дольше указанного времени
+     *
+     * @param value   элемент
+     * @param timeout время ожидания
+     * @param unit    единица измерения времени ожидания
+     * @return true, если элемент добавлен, false, если время ожидания истекло
+     * @throws InterruptedException если поток прерван во время ожидания
+     */
+    public boolean offer(long value, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        queueLock.lockInterruptibly();
+        try {
+            while (_count == queue.length) {
+                if (nanos <= 0)
+                    return false;
+                nanos = insertCondition.awaitNanos(nanos);
+            }
+            enqueue(value);
+            return true;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Добавить элемент, ожидая места в очереди сколько потребуется
+     *
+     * @param value элемент
+     * @throws InterruptedException если поток прерван во время ожидания
+     */
+    public void put(long value) throws InterruptedException {
+        queueLock.lockInterruptibly();
+        try {
+            while (_count == queue.length)
+                insertCondition.await();
+            enqueue(value);
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Забрать элемент без ожидания
+     *
+     * @return элемент или пустой {@link OptionalLong}, если очередь пуста
+     */
+    public OptionalLong poll() {
+        queueLock.lock();
+        try {
+            return _count == 0 ? OptionalLong.empty() : OptionalLong.of(dequeue());
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Забрать элемент, ожидая его появления не дольше указанного времени
+     *
+     * @param timeout время ожидания
+     * @param unit    единица измерения времени ожидания
+     * @return элемент или пустой {@link OptionalLong}, если время ожидания истекло
+     * @throws InterruptedException если поток прерван во время ожидания
+     */
+    public OptionalLong poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        queueLock.lockInterruptibly();
+        try {
+            while (_count == 0) {
+                if (nanos <= 0)
+                    return OptionalLong.empty();
+                nanos = removeCondition.awaitNanos(nanos);
+            }
+            return OptionalLong.of(dequeue());
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Забрать элемент, ожидая его появления сколько потребуется
+     *
+     * @return элемент
+     * @throws InterruptedException если поток прерван во время ожидания
+     */
+    public long take() throws InterruptedException {
+        queueLock.lockInterruptibly();
+        try {
+            while (_count == 0)
+                removeCondition.await();
+            return dequeue();
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Добавить элементы массива, ожидая места в очереди сколько потребуется.
+     * Элементы копируются непрерывными участками, не больше двух копирований
+     * на участок, и каждый участок добавляется за один захват блокировки
+     * с одним оповещением потребителей
+     *
+     * @param src массив элементов
+     * @param off индекс первого элемента в массиве
+     * @param len количество элементов
+     * @throws IllegalArgumentException если участок выходит за границы массива
+     * @throws InterruptedException     если поток прерван во время ожидания
+     */
+    public void insertAll(long[] src, int off, int len) throws InterruptedException {
+        if (off < 0 || len < 0 || len > src.length - off)
+            throw new IllegalArgumentException("Wrong range!");
+        while (len > 0) {
+            queueLock.lockInterruptibly();
+            try {
+                while (_count == queue.length)
+                    insertCondition.await();
+                int count = Math.min(len, queue.length - _count);
+                int first = Math.min(count, queue.length - _tail);
+                System.arraycopy(src, off, queue, _tail, first);
+                System.arraycopy(src, off + first, queue, 0, count - first);
+                _tail = (int) (((long) _tail + count) % queue.length);
+                _count += count;
+                off += count;
+                len -= count;
+                removeCondition.signalAll();
+            } finally {
+                queueLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Забрать без ожидания все элементы, но не больше указанного количества
+     *
+     * @param dst массив для элементов, элементы пишутся с начала массива
+     * @param max наибольшее количество элементов
+     * @return количество забранных элементов
+     * @throws IllegalArgumentException если количество отрицательное или больше длины массива
+     */
+    public int drainTo(long[] dst, int max) {
+        if (max < 0 || max > dst.length)
+            throw new IllegalArgumentException("Wrong count!");
+        queueLock.lock();
+        try {
+            return drain(dst, max);
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Забрать от min до max элементов. Ждём, пока в очереди не наберётся min элементов
+     * или не истечёт время ожидания, после чего забираем все элементы, но не больше max.
+     * По истечении времени забранных элементов может оказаться меньше min
+     *
+     * @param dst     массив для элементов, элементы пишутся с начала массива
+     * @param min     количество элементов, которого ждём
+     * @param max     наибольшее количество элементов
+     * @param timeout время ожидания
+     * @param unit    единица измерения времени ожидания
+     * @return количество забранных элементов
+     * @throws IllegalArgumentException если количества неверны или min больше вместимости очереди
+     * @throws InterruptedException     если поток прерван во время ожидания
+     */
+    public int take(long[] dst, int min, int max, long timeout, TimeUnit unit) throws InterruptedException {
+        if (min < 0 || min > max || max > dst.length || min > queue.length)
+            throw new IllegalArgumentException("Wrong count!");
+        long nanos = unit.toNanos(timeout);
+        queueLock.lockInterruptibly();
+        try {
+            while (_count < min && nanos > 0)
+                nanos = removeCondition.awaitNanos(nanos);
+            return drain(dst, max);
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Получить количество элементов
+     *
+     * @return количество элементов
+     */
+    public int size() {
+        queueLock.lock();
+        try {
+            return _count;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Проверяем полность очереди
+     *
+     * @return true, если очередь полная
+     */
+    public boolean isFull() {
+        return size() == queue.length;
+    }
+
+    /**
+     * Проверяем пустоту очереди
+     *
+     * @return true, если очередь пуста
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Получить размер очереди
+     *
+     * @return размер очереди
+     */
+    public int capacity() {
+        return queue.length;
+    }
+
+    @Override
+    public String toString() {
+        queueLock.lock();
+        try {
+            if (_count == 0)
+                return "Queue is empty!";
+            StringBuilder stringBuilder = new StringBuilder();
+            for (int i = 0, position = _head; i < _count; i++, position = next(position)) {
+                if (i > 0)
+                    stringBuilder.append(" ");
+                stringBuilder.append(queue[position]);
+            }
+            return stringBuilder.toString();
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Добавить элемент в конец очереди и оповестить потребителей,
+     * вызывается под блокировкой, место должно быть свободно. Будятся все потребители:
+     * пакетный {@link #take(long[], int, int, long, TimeUnit)} может ждать
+     * больше одного элемента и не должен забрать оповещение у одиночного
+     *
+     * @param value элемент
+     */
+    private void enqueue(long value) {
+        queue[_tail] = value;
+        _tail = next(_tail);
+        _count++;
+        removeCondition.signalAll();
+    }
+
+    /**
+     * Забрать элемент из начала очереди и оповестить производителей,
+     * вызывается под блокировкой, очередь не должна быть пуста
+     *
+     * @return элемент
+     */
+    private long dequeue() {
+        long value = queue[_head];
+        _head = next(_head);
+        _count--;
+        insertCondition.signal();
+        return value;
+    }
+
+    /**
+     * Забрать элементы из начала очереди и оповестить производителей,
+     * вызывается под блокировкой
+     *
+     * @param dst массив для элементов
+     * @param max наибольшее количество элементов
+     * @return количество забранных элементов
+     */
+    private int drain(long[] dst, int max) {
+        int count = Math.min(max, _count);
+        if (count == 0)
+            return 0;
+        int first = Math.min(count, queue.length - _head);
+        System.arraycopy(queue, _head, dst, 0, first);
+        System.arraycopy(queue, 0, dst, first, count - first);
+        _head = (int) (((long) _head + count) % queue.length);
+        _count -= count;
+        insertCondition.signalAll();
+        return count;
+    }
+
+    /**
+     * Получить следующую позицию после указанной
+     *
+     * @param position позиция
+     * @return следующая позиция
+     */
+    private int next(int position) {
+        return ++position == queue.length ? 0 : position;
+    }
+}
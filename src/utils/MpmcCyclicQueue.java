@@ -0,0 +1,207 @@
+package utils;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.OptionalInt;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Циклическая очередь без блокировок для многих производителей и многих потребителей.
+ * <p>
+ * Очередь устроена по схеме Вьюкова: у каждой ячейки есть свой номер последовательности,
+ * который говорит, чей сейчас ход. Ячейка с номером pos свободна для производителя,
+ * занявшего позицию pos, а ячейка с номером pos + 1 готова для потребителя той же позиции.
+ * Потоки соревнуются только за счётчик хвоста или головы через CAS, а сами элементы
+ * пишутся и читаются без блокировок. Счётчики лежат в разных кэш-линиях.
+ * Размер очереди округляется вверх до степени двойки, и позиция в массиве
+ * вычисляется маской вместо деления по модулю
+ *
+ * @author Aleksei Vokhmin
+ */
+public class MpmcCyclicQueue {
+    /**
+     * Размер очереди по умолчанию
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * Наибольший размер очереди
+     */
+    public static final int MAX_CAPACITY = 1 << 30;
+
+    /**
+     * Расстояние между счётчиками в элементах long, 128 байт - две кэш-линии,
+     * с запасом на предвыборку соседней линии
+     */
+    private static final int PAD = 16;
+    private static final int TAIL = PAD;
+    private static final int HEAD = 2 * PAD;
+
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final int[] queue;
+
+    /**
+     * Номера последовательности ячеек
+     */
+    private final long[] sequences;
+    private final int mask;
+
+    /**
+     * Счётчики хвоста и головы
+     */
+    private final long[] counters = new long[3 * PAD];
+
+    /**
+     * Стандартный конструктор с {@link #DEFAULT_CAPACITY} элементами
+     */
+    public MpmcCyclicQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Конструктор с указанным размером, размер округляется вверх до степени двойки.
+     * Очереди нужны как минимум две ячейки
+     *
+     * @param capacity размер очереди
+     * @throws IllegalArgumentException если размер меньше 1 или больше {@link #MAX_CAPACITY}
+     */
+    public MpmcCyclicQueue(int capacity) {
+        if (capacity < 1 || capacity > MAX_CAPACITY)
+            throw new IllegalArgumentException("Wrong capacity!");
+        int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        queue = new int[size];
+        sequences = new long[size];
+        for (int i = 0; i < size; i++)
+            sequences[i] = i;
+        mask = size - 1;
+    }
+
+    /**
+     * Добавить элемент, если есть место
+     *
+     * @param value элемент
+     * @return true, если элемент добавлен, false, если очередь полна
+     */
+    public boolean offer(int value) {
+        long tail = (long) LONGS.getVolatile(counters, TAIL);
+        while (true) {
+            int index = (int) tail & mask;
+            long sequence = (long) LONGS.getAcquire(sequences, index);
+            if (sequence == tail) {
+                long witness = (long) LONGS.compareAndExchange(counters, TAIL, tail, tail + 1);
+                if (witness == tail) {
+                    queue[index] = value;
+                    LONGS.setRelease(sequences, index, tail + 1);
+                    return true;
+                }
+                tail = witness;
+            } else if (sequence < tail) {
+                return false;
+            } else {
+                tail = (long) LONGS.getVolatile(counters, TAIL);
+            }
+        }
+    }
+
+    /**
+     * Забрать элемент, если он есть
+     *
+     * @return элемент или пустой {@link OptionalInt}, если очередь пуста
+     */
+    public OptionalInt poll() {
+        long head = (long) LONGS.getVolatile(counters, HEAD);
+        while (true) {
+            int index = (int) head & mask;
+            long sequence = (long) LONGS.getAcquire(sequences, index);
+            if (sequence == head + 1) {
+                long witness = (long) LONGS.compareAndExchange(counters, HEAD, head, head + 1);
+                if (witness == head) {
+                    int value = queue[index];
+                    LONGS.setRelease(sequences, index, head + mask + 1);
+                    return OptionalInt.of(value);
+                }
+                head = witness;
+            } else if (sequence <= head) {
+                return OptionalInt.empty();
+            } else {
+                head = (long) LONGS.getVolatile(counters, HEAD);
+            }
+        }
+    }
+
+    /**
+     * Добавить элемент, ожидая места в очереди. Поток сначала крутится
+     * в активном ожидании, затем уступает процессор, затем засыпает
+     * на короткое время
+     *
+     * @param value элемент
+     * @throws InterruptedException если поток прерван во время ожидания
+     */
+    public void put(int value) throws InterruptedException {
+        for (int attempt = 0; !offer(value); attempt++)
+            idle(attempt);
+    }
+
+    /**
+     * Забрать элемент, ожидая его появления так же, как {@link #put(int)}
+     *
+     * @return элемент
+     * @throws InterruptedException если поток прерван во время ожидания
+     */
+    public int take() throws InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            OptionalInt value = poll();
+            if (value.isPresent())
+                return value.getAsInt();
+            idle(attempt);
+        }
+    }
+
+    /**
+     * Получить количество элементов. Во время работы других потоков
+     * результат приблизителен
+     *
+     * @return количество элементов
+     */
+    public int size() {
+        long head = (long) LONGS.getVolatile(counters, HEAD);
+        long tail = (long) LONGS.getVolatile(counters, TAIL);
+        return (int) Math.max(0, Math.min(tail - head, queue.length));
+    }
+
+    /**
+     * Проверяем пустоту очереди
+     *
+     * @return true, если очередь пуста
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Получить размер очереди
+     *
+     * @return размер очереди, степень двойки
+     */
+    public int capacity() {
+        return queue.length;
+    }
+
+    /**
+     * Подождать перед следующей попыткой
+     *
+     * @param attempt номер попытки
+     * @throws InterruptedException если поток прерван
+     */
+    private static void idle(int attempt) throws InterruptedException {
+        if (attempt < 100)
+            Thread.onSpinWait();
+        else if (attempt < 200)
+            Thread.yield();
+        else
+            LockSupport.parkNanos(1000);
+        if (Thread.interrupted())
+            throw new InterruptedException();
+    }
+}
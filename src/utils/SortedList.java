@@ -1,35 +1,104 @@
 package utils;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.Predicate;
+
 /**
  * Класс, представляющий собой список, принимающий объекты, реализующие
  * инрейфейс Comparable и наследующиеся до класса переданного параметра
+ * <p>
+ * В упорядоченном режиме список сохраняет порядок элементов при каждой вставке,
+ * элементы добавляются методом {@link #add(Comparable)}, а поиск
+ * выполняется двоичным поиском по {@link Comparable#compareTo(Object)} за O(log n)
+ * <p>
+ * Элементы хранятся в массиве с разрывом (gap buffer): свободное место массива
+ * собрано в один разрыв, который переносится к месту вставки или удаления.
+ * Поэтому вставки и удаления рядом с предыдущими стоят O(1) амортизированно,
+ * а не сдвигают весь хвост списка. Когда место заканчивается, массив растёт в полтора раза
  *
  * @author Aleksei Vokhmin
  */
 public class SortedList<T extends Comparable<? super T>> {
 
     /**
-     * Размер массива, инициализируется в конструкторе
+     * Вместимость списка по умолчанию
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+    /**
+     * Наибольшая вместимость массива
      */
-    private final int SIZE;
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
     /**
-     * Основной массив данных для работы, инициализируется в конструкторе
+     * Основной массив данных для работы с разрывом, заменяется при росте списка
      */
-    private final T[] array;
+    private T[] array;
     /**
      * Голова очереди
      */
     private int _tail;
+    /**
+     * Позиция начала разрыва. Элемент с позицией i хранится в array[i],
+     * если i меньше начала разрыва, иначе - в array[i + длина разрыва]
+     */
+    private int _gapStart;
+    /**
+     * Упорядоченный режим: список поддерживает порядок элементов при каждой вставке
+     */
+    private final boolean sorted;
+    /**
+     * Длина начала списка, которое точно отсортировано. Элементы после него
+     * вливаются в отсортированное начало при следующей сортировке
+     */
+    private int _sortedEnd;
+
+    /**
+     * Конструктор пустого списка
+     */
+    public SortedList() {
+        this(false);
+    }
 
     /**
-     * Конструктор с передаваемым массивом указаного типа
+     * Конструктор пустого списка с указанным режимом работы
+     *
+     * @param sorted true для упорядоченного режима
+     */
+    @SuppressWarnings("unchecked")
+    public SortedList(boolean sorted) {
+        this((T[]) new Comparable<?>[DEFAULT_CAPACITY], sorted);
+    }
+
+    /**
+     * Конструктор с передаваемым массивом указаного типа. Массив задаёт
+     * начальную вместимость, при заполнении список переходит в новый массив
      *
      * @param array массив
      */
     public SortedList(T[] array) {
+        this(array, false);
+    }
+
+    /**
+     * Конструктор с передаваемым массивом указаного типа и режимом работы
+     *
+     * @param array  массив
+     * @param sorted true для упорядоченного режима
+     */
+    public SortedList(T[] array, boolean sorted) {
         this.array = array;
-        this.SIZE = array.length;
         this._tail = -1;
+        this._gapStart = 0;
+        this.sorted = sorted;
+    }
+
+    /**
+     * Узнать, работает ли список в упорядоченном режиме
+     *
+     * @return true, если список поддерживает порядок элементов
+     */
+    public boolean isSorted() {
+        return sorted;
     }
 
     /**
@@ -46,35 +115,263 @@ public class SortedList<T extends Comparable<? super T>> {
      *
      * @param value    элемент
      * @param position позиция
-     * @throws ArrayIndexOutOfBoundsException если больше нет места в масиве
+     * @throws IllegalArgumentException если в упорядоченном режиме вставка нарушит порядок
      */
     public void insert(T value, int position) {
-        if (_tail + 1 == SIZE)
-            throw new ArrayIndexOutOfBoundsException("There is no more space for new value!");
         if (checkPosition(position))
             return;
-        //for (int i = _tail; i >= position; i--)  <- Это более старая версия того,
-        //    array[i + 1] = array[i];                что написано ниже.
-        System.arraycopy(array, position, array, position + 1, _tail + 1 - position);
-        array[position] = value;
-        ++_tail;
+        if (sorted && (position > 0 && get(position - 1).compareTo(value) > 0
+                       || position <= _tail && get(position).compareTo(value) < 0))
+            throw new IllegalArgumentException("Wrong position!");
+        insertAt(value, position);
+        if (position < _sortedEnd) {
+            if ((position == 0 || get(position - 1).compareTo(value) <= 0)
+                && get(position + 1).compareTo(value) >= 0)
+                ++_sortedEnd;
+            else
+                _sortedEnd = position;
+        }
+    }
+
+    /**
+     * Добавить элемент в упорядоченный список. Позиция находится двоичным поиском,
+     * равные элементы остаются в порядке добавления
+     *
+     * @param value элемент
+     * @return позиция добавленного элемента
+     * @throws IllegalStateException если список не в упорядоченном режиме
+     */
+    public int add(T value) {
+        if (!sorted)
+            throw new IllegalStateException("List is not in sorted mode!");
+        int position = upperBound(value);
+        insertAt(value, position);
+        ++_sortedEnd;
+        return position;
     }
 
     /**
-     * Получить позицию указанного элемента
+     * Получить позицию указанного элемента. В упорядоченном режиме элемент
+     * ищется двоичным поиском и сравнивается через compareTo, иначе - через equals
      *
      * @param value элемент в списке
-     * @return позиция элемента
+     * @return позиция элемента, для равных элементов - первая из них
      * @throws IllegalArgumentException если элемент не найден в списке
      */
     public int locate(T value) {
+        if (sorted) {
+            int position = lowerBound(value);
+            if (position <= _tail && get(position).compareTo(value) == 0)
+                return position;
+            throw new IllegalArgumentException("Wrong value!");
+        }
         for (int i = 0; i < _tail + 1; i++) {
-            if (array[i].equals(value))
+            if (get(i).equals(value))
                 return i;
         }
         throw new IllegalArgumentException("Wrong value!");
     }
 
+    /**
+     * Узнать, есть ли элемент в списке
+     *
+     * @param value элемент
+     * @return true, если элемент найден
+     */
+    public boolean contains(T value) {
+        if (sorted) {
+            int position = lowerBound(value);
+            return position <= _tail && get(position).compareTo(value) == 0;
+        }
+        for (int i = 0; i < _tail + 1; i++) {
+            if (get(i).equals(value))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Получить наибольший элемент, не превосходящий указанный
+     *
+     * @param value элемент
+     * @return найденный элемент или null, если такого нет
+     */
+    public T floor(T value) {
+        if (sorted) {
+            int position = upperBound(value);
+            return position > 0 ? get(position - 1) : null;
+        }
+        T result = null;
+        for (int i = 0; i < _tail + 1; i++) {
+            T element = get(i);
+            if (element.compareTo(value) <= 0 && (result == null || element.compareTo(result) > 0))
+                result = element;
+        }
+        return result;
+    }
+
+    /**
+     * Получить наименьший элемент, не меньший указанного
+     *
+     * @param value элемент
+     * @return найденный элемент или null, если такого нет
+     */
+    public T ceiling(T value) {
+        if (sorted) {
+            int position = lowerBound(value);
+            return position <= _tail ? get(position) : null;
+        }
+        T result = null;
+        for (int i = 0; i < _tail + 1; i++) {
+            T element = get(i);
+            if (element.compareTo(value) >= 0 && (result == null || element.compareTo(result) < 0))
+                result = element;
+        }
+        return result;
+    }
+
+    /**
+     * Получить количество элементов в диапазоне [from, to)
+     *
+     * @param from нижняя граница, включительно
+     * @param to   верхняя граница, не включительно
+     * @return количество элементов
+     */
+    public int count(T from, T to) {
+        if (sorted)
+            return Math.max(lowerBound(to) - lowerBound(from), 0);
+        int count = 0;
+        for (int i = 0; i < _tail + 1; i++) {
+            T element = get(i);
+            if (element.compareTo(from) >= 0 && element.compareTo(to) < 0)
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * Получить элементы из диапазона [from, to) в виде нового списка
+     * того же режима, вместимость которого равна количеству элементов
+     *
+     * @param from нижняя граница, включительно
+     * @param to   верхняя граница, не включительно
+     * @return новый список
+     */
+    public SortedList<T> range(T from, T to) {
+        T[] values;
+        if (sorted) {
+            int begin = lowerBound(from);
+            int end = Math.max(lowerBound(to), begin);
+            values = Arrays.copyOf(array, end - begin);
+            for (int i = begin; i < end; i++)
+                values[i - begin] = get(i);
+        } else {
+            values = Arrays.copyOf(array, count(from, to));
+            int count = 0;
+            for (int i = 0; i < _tail + 1; i++) {
+                T element = get(i);
+                if (element.compareTo(from) >= 0 && element.compareTo(to) < 0)
+                    values[count++] = element;
+            }
+        }
+        SortedList<T> list = new SortedList<>(values, sorted);
+        list._tail = values.length - 1;
+        list._gapStart = values.length;
+        list._sortedEnd = sorted ? values.length : 0;
+        return list;
+    }
+
+    /**
+     * Добавить элементы массива за один проход: они дописываются в конец списка,
+     * а в упорядоченном режиме сортируются и вливаются в список за O(k log k + n)
+     *
+     * @param values элементы
+     */
+    public void addAll(T[] values) {
+        appendAll(values);
+    }
+
+    /**
+     * Добавить элементы коллекции за один проход: они дописываются в конец списка,
+     * а в упорядоченном режиме сортируются и вливаются в список за O(k log k + n)
+     *
+     * @param values элементы
+     */
+    public void addAll(Collection<? extends T> values) {
+        appendAll(values.toArray());
+    }
+
+    /**
+     * Слить с другим списком. Оба списка считаются упорядоченными: этот список
+     * сортируется, если он ещё не отсортирован, а элементы другого списка
+     * вливаются в него за линейное время, если другой список отсортирован.
+     * Другой список не изменяется
+     *
+     * @param other другой список
+     */
+    public void merge(SortedList<? extends T> other) {
+        sort();
+        Object[] values = new Object[other.end()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = other.get(i);
+        appendAll(values);
+        sortTail();
+    }
+
+    /**
+     * Удалить все элементы, подходящие под условие, за один проход
+     *
+     * @param filter условие удаления
+     * @return количество удалённых элементов
+     */
+    public int removeIf(Predicate<? super T> filter) {
+        moveGap(_tail + 1);
+        int end = _tail + 1;
+        int kept = 0;
+        int sortedKept = 0;
+        int i = 0;
+        try {
+            for (; i < end; i++) {
+                T element = array[i];
+                if (!filter.test(element)) {
+                    if (i < _sortedEnd)
+                        sortedKept++;
+                    array[kept++] = element;
+                }
+            }
+        } finally {
+            if (i < end) {
+                System.arraycopy(array, i, array, kept, end - i);
+                if (i < _sortedEnd)
+                    sortedKept += _sortedEnd - i;
+                kept += end - i;
+            }
+            Arrays.fill(array, kept, end, null);
+            _sortedEnd = sortedKept;
+            _tail = kept - 1;
+            _gapStart = kept;
+        }
+        return end - kept;
+    }
+
+    /**
+     * Удалить элементы в позициях [from, to) за один сдвиг
+     *
+     * @param from начальная позиция, включительно
+     * @param to   конечная позиция, не включительно
+     * @throws IllegalArgumentException если позиции неверны
+     */
+    public void deleteRange(int from, int to) {
+        if (from < 0 || to > _tail + 1 || from > to)
+            throw new IllegalArgumentException("Wrong position!");
+        if (from < _sortedEnd)
+            _sortedEnd -= Math.min(to, _sortedEnd) - from;
+        moveGap(from);
+        int gap = gapLength();
+        Arrays.fill(array, from + gap, to + gap, null);
+        _tail -= to - from;
+    }
+
     /**
      * Получить элемент в указаной позиции
      *
@@ -85,30 +382,24 @@ public class SortedList<T extends Comparable<? super T>> {
     public T retrieve(int position) {
         if (checkPosition(position))
             throw new IllegalArgumentException("Wrong position!");
-        if (array[position] == null)
+        if (position > _tail)
             throw new IllegalArgumentException("Wrong position!");
-        return array[position];
+        return get(position);
     }
 
     /**
      * Удалить элемент в указанной позиции
      *
      * @param position позиция
-     * @throws IllegalArgumentException       если позиция неверна
-     * @throws ArrayIndexOutOfBoundsException если список пуст
      */
     public void delete(int position) {
-        if (checkPosition(position))
+        if (checkPosition(position) || position > _tail)
             return;
-        array[position] = null;
-        if (_tail == 0) {
-            _tail = -1;
-        } else {
-            //for (int i = position; i <= _tail; i++)  <- Это более старая версия того,
-            //    array[i] = array[i + 1];                что написано ниже.
-            System.arraycopy(array, position + 1, array, position, _tail - position);
-            --_tail;
-        }
+        if (position < _sortedEnd)
+            --_sortedEnd;
+        moveGap(position);
+        array[position + gapLength()] = null;
+        --_tail;
     }
 
     /**
@@ -145,7 +436,10 @@ public class SortedList<T extends Comparable<? super T>> {
      * Обнулить список
      */
     public void makeNull() {
+        Arrays.fill(array, null);
         _tail = -1;
+        _gapStart = 0;
+        _sortedEnd = 0;
     }
 
     /**
@@ -171,35 +465,198 @@ public class SortedList<T extends Comparable<? super T>> {
      * @throws IllegalArgumentException если позиция неверна
      */
     private boolean checkPosition(int position) {
-        return position > SIZE || position < 0;
+        return position > _tail + 1 || position < 0;
+    }
+
+    /**
+     * Получить длину разрыва
+     *
+     * @return длина разрыва
+     */
+    private int gapLength() {
+        return array.length - _tail - 1;
+    }
+
+    /**
+     * Получить элемент по позиции, не проверяя её
+     *
+     * @param position позиция элемента
+     * @return элемент
+     */
+    private T get(int position) {
+        return position < _gapStart ? array[position] : array[position + gapLength()];
     }
 
     /**
-     * Поменять элементы массива местами.
-     * Метод требуется для сортировки
+     * Вставить элемент в разрыв, перенесённый к позиции
      *
-     * @param pos1 первый элемент
-     * @param pos2 второй элемент
+     * @param value    элемент
+     * @param position позиция
      */
-    private void swap(int pos1, int pos2) {
-        T val = array[pos1];
-        array[pos1] = array[pos2];
-        array[pos2] = val;
+    private void insertAt(T value, int position) {
+        if (gapLength() == 0)
+            grow();
+        moveGap(position);
+        array[_gapStart++] = value;
+        ++_tail;
     }
 
     /**
-     * Простая пузырьковая сортировка
+     * Перенести разрыв к позиции, сдвинув только элементы между
+     * старым и новым положением разрыва
+     *
+     * @param position новая позиция начала разрыва
+     */
+    private void moveGap(int position) {
+        int gap = gapLength();
+        if (position < _gapStart) {
+            System.arraycopy(array, position, array, position + gap, _gapStart - position);
+            Arrays.fill(array, position, Math.min(_gapStart, position + gap), null);
+        } else if (position > _gapStart) {
+            System.arraycopy(array, _gapStart + gap, array, _gapStart, position - _gapStart);
+            Arrays.fill(array, Math.max(position, _gapStart + gap), position + gap, null);
+        }
+        _gapStart = position;
+    }
+
+    /**
+     * Увеличить массив в полтора раза, новое место становится разрывом
+     */
+    private void grow() {
+        ensureCapacity(array.length + 1L);
+    }
+
+    /**
+     * Увеличить массив не меньше чем до указанной вместимости и не меньше чем
+     * в полтора раза, новое место становится разрывом
+     *
+     * @param minCapacity наименьшая нужная вместимость
+     */
+    private void ensureCapacity(long minCapacity) {
+        int length = array.length;
+        if (minCapacity <= length)
+            return;
+        if (minCapacity > MAX_CAPACITY)
+            throw new OutOfMemoryError("SortedList capacity exceeds " + MAX_CAPACITY);
+        int capacity = (int) Math.min(Math.max(Math.max((long) length + (length >> 1), DEFAULT_CAPACITY), minCapacity),
+                MAX_CAPACITY);
+        array = Arrays.copyOf(array, capacity);
+        System.arraycopy(array, _gapStart, array, _gapStart + capacity - length, length - _gapStart);
+        Arrays.fill(array, _gapStart, Math.min(length, _gapStart + capacity - length), null);
+    }
+
+    /**
+     * Найти первую позицию, элемент в которой не меньше указанного.
+     * Используется в упорядоченном режиме
+     *
+     * @param value элемент
+     * @return позиция от 0 до end()
+     */
+    private int lowerBound(T value) {
+        int low = 0;
+        int high = _tail + 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (get(middle).compareTo(value) < 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Найти первую позицию, элемент в которой больше указанного.
+     * Используется в упорядоченном режиме
+     *
+     * @param value элемент
+     * @return позиция от 0 до end()
+     */
+    private int upperBound(T value) {
+        int low = 0;
+        int high = _tail + 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (get(middle).compareTo(value) <= 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Устойчивая сортировка за O(n log n). Если начало списка уже отсортировано,
+     * то сортируются только добавленные после него элементы и вливаются в начало
+     * за O(k log k + n), где k - количество новых элементов.
+     * В упорядоченном режиме список уже отсортирован
      */
     public void sort() {
-        boolean isSorted = false;
-        while (!isSorted) {
-            isSorted = true;
-            for (int i = 0; i < _tail; i++) {
-                if (array[i].compareTo(array[i + 1]) > 0) {
-                    isSorted = false;
-                    swap(i, i + 1);
-                }
-            }
+        if (sorted || _sortedEnd == _tail + 1)
+            return;
+        sortTail();
+    }
+
+    /**
+     * Параллельная устойчивая сортировка в пуле fork-join для больших списков.
+     * Небольшие списки сортируются в текущем потоке
+     */
+    public void parallelSort() {
+        if (sorted || _sortedEnd == _tail + 1)
+            return;
+        moveGap(_tail + 1);
+        Arrays.parallelSort(array, 0, _tail + 1);
+        _sortedEnd = _tail + 1;
+    }
+
+    /**
+     * Отсортировать неотсортированный конец списка и влить его в отсортированное начало
+     */
+    private void sortTail() {
+        if (_sortedEnd == _tail + 1)
+            return;
+        moveGap(_tail + 1);
+        if (_sortedEnd > 0)
+            mergeTail();
+        else
+            Arrays.sort(array, 0, _tail + 1);
+        _sortedEnd = _tail + 1;
+    }
+
+    /**
+     * Дописать элементы в конец списка. В упорядоченном режиме
+     * они сразу вливаются в список
+     *
+     * @param values элементы
+     */
+    private void appendAll(Object[] values) {
+        ensureCapacity((long) _tail + 1 + values.length);
+        moveGap(_tail + 1);
+        System.arraycopy(values, 0, array, _tail + 1, values.length);
+        _tail += values.length;
+        _gapStart = _tail + 1;
+        if (sorted)
+            sortTail();
+    }
+
+    /**
+     * Отсортировать элементы после отсортированного начала и влить их в него,
+     * сливая с конца, чтобы дополнительная память понадобилась только под новые элементы.
+     * Разрыв должен находиться в конце списка
+     */
+    private void mergeTail() {
+        int end = _tail + 1;
+        Arrays.sort(array, _sortedEnd, end);
+        if (array[_sortedEnd - 1].compareTo(array[_sortedEnd]) <= 0)
+            return;
+        T[] tail = Arrays.copyOfRange(array, _sortedEnd, end);
+        int i = _sortedEnd - 1;
+        int j = tail.length - 1;
+        for (int k = end - 1; j >= 0; k--) {
+            if (i >= 0 && array[i].compareTo(tail[j]) > 0)
+                array[k] = array[i--];
+            else
+                array[k] = tail[j--];
         }
     }
 
@@ -208,8 +665,8 @@ public class SortedList<T extends Comparable<? super T>> {
         if (_tail == -1) return "List is empty!";
         StringBuilder sb = new StringBuilder();
         for (int i = 0; i < _tail; i++)
-            sb.append(array[i]).append(" ");
-        sb.append(array[_tail]);
+            sb.append(get(i)).append(" ");
+        sb.append(get(_tail));
         return sb.toString();
     }
 }
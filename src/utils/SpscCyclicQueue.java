@@ -0,0 +1,192 @@
+package utils;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.OptionalInt;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Циклическая очередь без блокировок для одного потока-производителя
+ * и одного потока-потребителя.
+ * <p>
+ * Производитель пишет только счётчик хвоста, потребитель - только счётчик головы,
+ * поэтому им не нужны ни блокировки, ни CAS: достаточно публикации счётчика
+ * с семантикой release и чтения с семантикой acquire. Каждый поток хранит
+ * у себя последнее прочитанное значение чужого счётчика и перечитывает его,
+ * только когда очередь кажется полной или пустой. Счётчики лежат в разных
+ * кэш-линиях, чтобы производитель и потребитель не вытесняли линии друг друга.
+ * Размер очереди округляется вверх до степени двойки, и позиция в массиве
+ * вычисляется маской вместо деления по модулю
+ *
+ * @author Aleksei Vokhmin
+ */
+public class SpscCyclicQueue {
+    /**
+     * Размер очереди по умолчанию
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * Наибольший размер очереди
+     */
+    public static final int MAX_CAPACITY = 1 << 30;
+
+    /**
+     * Расстояние между счётчиками в элементах long, 128 байт - две кэш-линии,
+     * с запасом на предвыборку соседней линии
+     */
+    private static final int PAD = 16;
+    private static final int TAIL = PAD;
+    private static final int HEAD_CACHE = TAIL + 1;
+    private static final int HEAD = 2 * PAD;
+    private static final int TAIL_CACHE = HEAD + 1;
+
+    private static final VarHandle COUNTERS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final int[] queue;
+    private final int mask;
+
+    /**
+     * Счётчики очереди: хвост и кэш головы принадлежат производителю,
+     * голова и кэш хвоста - потребителю
+     */
+    private final long[] counters = new long[3 * PAD];
+
+    /**
+     * Стандартный конструктор с {@link #DEFAULT_CAPACITY} элементами
+     */
+    public SpscCyclicQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Конструктор с указанным размером, размер округляется вверх до степени двойки
+     *
+     * @param capacity размер очереди
+     * @throws IllegalArgumentException если размер меньше 1 или больше {@link #MAX_CAPACITY}
+     */
+    public SpscCyclicQueue(int capacity) {
+        if (capacity < 1 || capacity > MAX_CAPACITY)
+            throw new IllegalArgumentException("Wrong capacity!");
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        queue = new int[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Добавить элемент, если есть место. Вызывается только потоком-производителем
+     *
+     * @param value элемент
+     * @return true, если элемент добавлен, false, если очередь полна
+     */
+    public boolean offer(int value) {
+        long[] counters = this.counters;
+        long tail = counters[TAIL];
+        if (tail - counters[HEAD_CACHE] > mask) {
+            counters[HEAD_CACHE] = (long) COUNTERS.getAcquire(counters, HEAD);
+            if (tail - counters[HEAD_CACHE] > mask)
+                return false;
+        }
+        queue[(int) tail & mask] = value;
+        COUNTERS.setRelease(counters, TAIL, tail + 1);
+        return true;
+    }
+
+    /**
+     * Забрать элемент, если он есть. Вызывается только потоком-потребителем
+     *
+     * @return элемент или пустой {@link OptionalInt}, если очередь пуста
+     */
+    public OptionalInt poll() {
+        long[] counters = this.counters;
+        long head = counters[HEAD];
+        if (head >= counters[TAIL_CACHE]) {
+            counters[TAIL_CACHE] = (long) COUNTERS.getAcquire(counters, TAIL);
+            if (head >= counters[TAIL_CACHE])
+                return OptionalInt.empty();
+        }
+        int value = queue[(int) head & mask];
+        COUNTERS.setRelease(counters, HEAD, head + 1);
+        return OptionalInt.of(value);
+    }
+
+    /**
+     * Добавить элемент, ожидая места в очереди. Поток сначала крутится
+     * в активном ожидании, затем уступает процессор, затем засыпает
+     * на короткое время
+     *
+     * @param value элемент
+     * @throws InterruptedException если поток прерван во время ожидания
+     */
+    public void put(int value) throws InterruptedException {
+        for (int attempt = 0; !offer(value); attempt++)
+            idle(attempt);
+    }
+
+    /**
+     * Забрать элемент, ожидая его появления так же, как {@link #put(int)}
+     *
+     * @return элемент
+     * @throws InterruptedException если поток прерван во время ожидания
+     */
+    public int take() throws InterruptedException {
+        long[] counters = this.counters;
+        long head = counters[HEAD];
+        for (int attempt = 0; head >= counters[TAIL_CACHE]; attempt++) {
+            counters[TAIL_CACHE] = (long) COUNTERS.getAcquire(counters, TAIL);
+            if (head < counters[TAIL_CACHE])
+                break;
+            idle(attempt);
+        }
+        int value = queue[(int) head & mask];
+        COUNTERS.setRelease(counters, HEAD, head + 1);
+        return value;
+    }
+
+    /**
+     * Получить количество элементов. Во время работы других потоков
+     * результат приблизителен
+     *
+     * @return количество элементов
+     */
+    public int size() {
+        long head = (long) COUNTERS.getVolatile(counters, HEAD);
+        long tail = (long) COUNTERS.getVolatile(counters, TAIL);
+        return (int) Math.max(0, Math.min(tail - head, queue.length));
+    }
+
+    /**
+     * Проверяем пустоту очереди
+     *
+     * @return true, если очередь пуста
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Получить размер очереди
+     *
+     * @return размер очереди, степень двойки
+     */
+    public int capacity() {
+        return queue.length;
+    }
+
+    /**
+     * Подождать перед следующей попыткой
+     *
+     * @param attempt номер попытки
+     * @throws InterruptedException если поток прерван
+     */
+    private static void idle(int attempt) throws InterruptedException {
+        if (attempt < 100)
+            Thread.onSpinWait();
+        else if (attempt < 200)
+            Thread.yield();
+        else
+            LockSupport.parkNanos(1000);
+        if (Thread.interrupted())
+            throw new InterruptedException();
+    }
+}
@@ -1,197 +1,2442 @@
 package utils;
 
-import java.util.Objects;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
 
 /**
  * Класс, представляющий собой список, принимающий объекты класса
- * String и объекты этого же класса
+ * String и объекты этого же класса.
+ * <p>
+ * Символы хранятся в блоках {@link StringItem}, которые собраны в
+ * сбалансированное дерево (rope). Общие узлы дерева не изменяются,
+ * поэтому конкатенация, вставка, получение подстроки и удаление выполняются
+ * за O(log n), а копии и предыдущие версии строки разделяют общие узлы.
+ * Узлы, которые принадлежат только одному списку, он изменяет на месте,
+ * общие узлы копируются при первой записи в них (copy-on-write).
+ * Блоки, все символы которых помещаются в Latin-1, хранятся по байту на символ.
+ * Заполненность блока хранится явно, поэтому символ U+0000 не отличается от остальных.
+ * <p>
+ * Список реализует {@link CharSequence} и {@link Appendable}, поэтому его можно
+ * передавать в {@link java.util.regex.Pattern}, {@link java.io.Writer} и парсеры
+ * без преобразования в String.
+ * <p>
+ * Список можно построить поверх отображённого в память файла методом {@link #map(Path)}:
+ * неизменённые участки файла остаются ссылками на отображение, а в куче оказываются
+ * только отредактированные блоки
  *
  * @author Aleksei Vokhmin
  */
 
-public class StringList {
+public class StringList implements CharSequence, Appendable {
     /**
-     * Класс, представляющий элемент связного списка
+     * Узел дерева строки
      */
-    private static class StringItem {
+    private static abstract class Node {
         /**
-         * Символы в блоке
+         * Метка списка, создавшего узел. Узел, метка которого совпадает с меткой
+         * списка, принадлежит только этому списку и может изменяться на месте
          */
-        char[] symbols;
+        Object owner;
+
+        /**
+         * Хэш-код символов поддерева, совместимый с {@link String#hashCode()}.
+         * Вычисляется при первом обращении, 0 - ещё не вычислен
+         */
+        int hash;
+
+        /**
+         * Истинно, если вычисленный хэш-код равен 0
+         */
+        boolean hashIsZero;
+
+        /**
+         * Получить хэш-код символов поддерева, вычисляя его при первом обращении
+         *
+         * @return хэш-код
+         */
+        int hash() {
+            int h = hash;
+            if (h == 0 && !hashIsZero) {
+                h = computeHash();
+                if (h == 0)
+                    hashIsZero = true;
+                else
+                    hash = h;
+            }
+            return h;
+        }
+
+        /**
+         * Сбросить хэш-код после изменения узла на месте
+         */
+        void resetHash() {
+            hash = 0;
+            hashIsZero = false;
+        }
+
+        /**
+         * Вычислить хэш-код символов поддерева
+         *
+         * @return хэш-код
+         */
+        abstract int computeHash();
+
+        /**
+         * Получить количество символов в поддереве
+         *
+         * @return количество символов
+         */
+        abstract int length();
+
+        /**
+         * Получить высоту поддерева, у блока она равна 0
+         *
+         * @return высота поддерева
+         */
+        abstract int depth();
+
+        /**
+         * Скопировать символы поддерева в массив
+         *
+         * @param begin    начальный индекс в поддереве
+         * @param end      конечный индекс в поддереве
+         * @param dst      массив для копирования
+         * @param dstBegin позиция в массиве, с которой начинается запись
+         */
+        abstract void getChars(int begin, int end, char[] dst, int dstBegin);
+
+        /**
+         * Скопировать символы поддерева в массив байт Latin-1.
+         * Вызывается только для поддеревьев, у которых {@link #isLatin1()} истинно
+         *
+         * @param begin    начальный индекс в поддереве
+         * @param end      конечный индекс в поддереве
+         * @param dst      массив для копирования
+         * @param dstBegin позиция в массиве, с которой начинается запись
+         */
+        abstract void getBytes(int begin, int end, byte[] dst, int dstBegin);
+
+        /**
+         * Узнать, хранятся ли все блоки поддерева в кодировке Latin-1
+         *
+         * @return true, если все блоки поддерева хранятся в Latin-1
+         */
+        abstract boolean isLatin1();
+    }
 
+    /**
+     * Класс, представляющий блок символов, лист дерева строки
+     */
+    private static class StringItem extends Node {
         /**
-         * Размер блока
+         * Символы в блоке в UTF-16 или null, если блок хранится в Latin-1
          */
-        final static int SIZE = 16;
+        char[] symbols;
 
         /**
-         * Количество символов в блоке
+         * Символы в блоке в Latin-1 или null, если блок хранится в UTF-16
          */
-        byte len;
+        byte[] bytes;
 
         /**
-         * Следующий элемент списка
+         * Количество символов в блоке, массив за его пределами не используется
          */
-        StringItem next;
+        int len;
 
         /**
-         * Конструктор, в котором для удобства инициализируется новый массив символов
+         * Конструктор пустого блока в кодировке Latin-1
+         *
+         * @param capacity вместимость блока
          */
-        public StringItem() {
-            symbols = new char[StringItem.SIZE];
+        public StringItem(int capacity) {
+            bytes = new byte[capacity];
             len = 0;
         }
 
         /**
-         * Узнать, существует ли следующий элемент списка
+         * Конструктор для блоков, хранящих символы вне кучи
+         */
+        private StringItem() {
+        }
+
+        /**
+         * Конструктор, копирующий в блок часть символьного массива.
+         * Вместимость блока равна количеству скопированных символов,
+         * если все символы помещаются в Latin-1, то блок хранится в ней
          *
-         * @return true, если елемент существует
+         * @param chars символьный массив
+         * @param begin начальный индекс
+         * @param end   конечный индекс
          */
-        public boolean hasNext() {
-            return next != null;
+        public StringItem(char[] chars, int begin, int end) {
+            bytes = compress(chars, begin, end);
+            if (bytes == null)
+                symbols = Arrays.copyOfRange(chars, begin, end);
+            len = end - begin;
+        }
+
+        /**
+         * Конструктор, копирующий в блок часть символов другого блока
+         *
+         * @param item  блок
+         * @param begin начальный индекс
+         * @param end   конечный индекс
+         */
+        public StringItem(StringItem item, int begin, int end) {
+            if (item.isLatin1()) {
+                bytes = new byte[end - begin];
+                item.getBytes(begin, end, bytes, 0);
+            } else if ((bytes = compress(item.symbols, begin, end)) == null) {
+                symbols = Arrays.copyOfRange(item.symbols, begin, end);
+            }
+            len = end - begin;
+        }
+
+        /**
+         * Перевести символы в массив байт Latin-1 за один проход:
+         * проверка символов совмещена с копированием
+         *
+         * @param chars символьный массив
+         * @param begin начальный индекс
+         * @param end   конечный индекс
+         * @return массив байт Latin-1 или null, если встретился символ вне Latin-1
+         */
+        static byte[] compress(char[] chars, int begin, int end) {
+            byte[] ret = new byte[end - begin];
+            for (int i = begin; i < end; i++) {
+                char c = chars[i];
+                if (c > 0xFF)
+                    return null;
+                ret[i - begin] = (byte) c;
+            }
+            return ret;
+        }
+
+        /**
+         * Получить символ блока
+         *
+         * @param index индекс символа в блоке
+         * @return символ
+         */
+        char charAt(int index) {
+            return bytes != null ? (char) (bytes[index] & 0xFF) : symbols[index];
+        }
+
+        /**
+         * Заместить символ блока. Если символ не помещается в Latin-1,
+         * то блок переводится в UTF-16
+         *
+         * @param index  индекс символа в блоке
+         * @param symbol символ
+         */
+        void setCharAt(int index, char symbol) {
+            resetHash();
+            if (bytes != null) {
+                if (symbol <= 0xFF) {
+                    bytes[index] = (byte) symbol;
+                    return;
+                }
+                inflate();
+            }
+            symbols[index] = symbol;
+        }
+
+        /**
+         * Перевести блок из Latin-1 в UTF-16 с той же вместимостью
+         */
+        void inflate() {
+            symbols = new char[bytes.length];
+            getChars(0, len, symbols, 0);
+            BlockPool.get().give(bytes);
+            bytes = null;
+        }
+
+        /**
+         * Дописать символ в конец блока, в массиве должно быть место.
+         * Если символ не помещается в Latin-1, то блок переводится в UTF-16
+         *
+         * @param symbol символ
+         */
+        void append(char symbol) {
+            resetHash();
+            if (bytes != null && symbol > 0xFF)
+                inflate();
+            if (bytes != null)
+                bytes[len++] = (byte) symbol;
+            else
+                symbols[len++] = symbol;
+        }
+
+        /**
+         * Дописать символы последовательности в конец блока, в массиве должно быть место.
+         * Если символ не помещается в Latin-1, то блок переводится в UTF-16
+         *
+         * @param csq   последовательность символов
+         * @param start начальный индекс
+         * @param end   конечный индекс
+         */
+        void append(CharSequence csq, int start, int end) {
+            resetHash();
+            if (bytes != null) {
+                for (char c; start < end && (c = csq.charAt(start)) <= 0xFF; start++)
+                    bytes[len++] = (byte) c;
+                if (start == end)
+                    return;
+                inflate();
+            }
+            if (csq instanceof String)
+                ((String) csq).getChars(start, end, symbols, len);
+            else
+                for (int i = start; i < end; i++)
+                    symbols[len + i - start] = csq.charAt(i);
+            len += end - start;
+        }
+
+        /**
+         * Найти первое вхождение символа в части блока.
+         * Простой цикл по массиву блока JIT-компилятор векторизует
+         *
+         * @param symbol символ
+         * @param begin  начальный индекс
+         * @param end    конечный индекс
+         * @return индекс символа в блоке или -1, если символ не найден
+         */
+        int indexOf(char symbol, int begin, int end) {
+            if (bytes == null) {
+                for (int i = begin; i < end; i++)
+                    if (symbols[i] == symbol)
+                        return i;
+                return -1;
+            }
+            if (symbol > 0xFF)
+                return -1;
+            byte b = (byte) symbol;
+            for (int i = begin; i < end; i++)
+                if (bytes[i] == b)
+                    return i;
+            return -1;
+        }
+
+        /**
+         * Найти последнее вхождение символа в части блока
+         *
+         * @param symbol символ
+         * @param begin  начальный индекс
+         * @param end    конечный индекс
+         * @return индекс символа в блоке или -1, если символ не найден
+         */
+        int lastIndexOf(char symbol, int begin, int end) {
+            if (bytes == null) {
+                for (int i = end - 1; i >= begin; i--)
+                    if (symbols[i] == symbol)
+                        return i;
+                return -1;
+            }
+            if (symbol > 0xFF)
+                return -1;
+            byte b = (byte) symbol;
+            for (int i = end - 1; i >= begin; i--)
+                if (bytes[i] == b)
+                    return i;
+            return -1;
+        }
+
+        /**
+         * Получить вместимость блока
+         *
+         * @return вместимость блока
+         */
+        int capacity() {
+            return bytes != null ? bytes.length : symbols != null ? symbols.length : len;
+        }
+
+        /**
+         * Сравнить часть блока с частью другого блока
+         *
+         * @param index       индекс в этом блоке
+         * @param other       другой блок
+         * @param otherIndex  индекс в другом блоке
+         * @param length      количество сравниваемых символов
+         * @return true, если символы совпадают
+         */
+        boolean regionEquals(int index, StringItem other, int otherIndex, int length) {
+            if (bytes != null && other.bytes != null)
+                return Arrays.equals(bytes, index, index + length, other.bytes, otherIndex, otherIndex + length);
+            if (symbols != null && other.symbols != null)
+                return Arrays.equals(symbols, index, index + length, other.symbols, otherIndex, otherIndex + length);
+            for (int i = 0; i < length; i++)
+                if (charAt(index + i) != other.charAt(otherIndex + i))
+                    return false;
+            return true;
+        }
+
+        @Override
+        int computeHash() {
+            int h = 0;
+            if (bytes != null) {
+                for (int i = 0; i < len; i++)
+                    h = 31 * h + (bytes[i] & 0xFF);
+            } else if (symbols != null) {
+                for (int i = 0; i < len; i++)
+                    h = 31 * h + symbols[i];
+            } else {
+                for (int i = 0; i < len; i++)
+                    h = 31 * h + charAt(i);
+            }
+            return h;
+        }
+
+        @Override
+        int length() {
+            return len;
+        }
+
+        @Override
+        int depth() {
+            return 0;
+        }
+
+        @Override
+        void getChars(int begin, int end, char[] dst, int dstBegin) {
+            if (bytes == null) {
+                System.arraycopy(symbols, begin, dst, dstBegin, end - begin);
+                return;
+            }
+            for (int i = begin; i < end; i++)
+                dst[dstBegin++] = (char) (bytes[i] & 0xFF);
+        }
+
+        @Override
+        void getBytes(int begin, int end, byte[] dst, int dstBegin) {
+            System.arraycopy(bytes, begin, dst, dstBegin, end - begin);
+        }
+
+        @Override
+        boolean isLatin1() {
+            return bytes != null;
         }
     }
 
     /**
-     * Класс для доступа к элементу в списке и символу в этом элементе
+     * Класс, представляющий отображённый в память файл, на который ссылаются блоки списка.
+     * Канал, через который файл был отображён, остаётся открытым, чтобы запись
+     * через {@link #transferTo(WritableByteChannel)} читала тот же файл, даже если
+     * по его пути уже лежит другой. Канал закрывается, когда список
+     * и все его копии становятся недостижимы
      */
-    private static class Position {
+    private static class MappedFile {
         /**
-         * Элемент списка
+         * Канал отображённого файла
          */
-        private StringItem node;
+        final FileChannel channel;
 
         /**
-         * Индекс символа в элементе списка
+         * Конструктор, задающий канал файла
+         *
+         * @param channel канал файла
          */
-        private int position;
+        public MappedFile(FileChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * Класс, представляющий блок, символы которого остаются в отображённом файле.
+     * Каждый байт файла считается символом Latin-1. Блок никогда не изменяется:
+     * запись в него копирует затронутую часть в обычный блок
+     */
+    private static class MappedItem extends StringItem {
+        /**
+         * Файл, из которого взяты символы
+         */
+        final MappedFile file;
+
+        /**
+         * Отображённый участок файла
+         */
+        final ByteBuffer buffer;
+
+        /**
+         * Позиция начала отображённого участка в файле
+         */
+        final long position;
+
+        /**
+         * Индекс первого символа блока в отображённом участке
+         */
+        final int offset;
+
+        /**
+         * Конструктор блока, ссылающегося на часть отображённого участка файла
+         *
+         * @param file     файл
+         * @param buffer   отображённый участок файла
+         * @param position позиция начала участка в файле
+         * @param offset   индекс первого символа блока в участке
+         * @param len      количество символов в блоке
+         */
+        public MappedItem(MappedFile file, ByteBuffer buffer, long position, int offset, int len) {
+            this.file = file;
+            this.buffer = buffer;
+            this.position = position;
+            this.offset = offset;
+            this.len = len;
+        }
 
         /**
-         * Default constructor
+         * Получить блок, ссылающийся на часть этого блока, без копирования символов
+         *
+         * @param begin начальный индекс
+         * @param end   конечный индекс
+         * @return новый блок
          */
-        public Position() {
+        MappedItem slice(int begin, int end) {
+            return new MappedItem(file, buffer, position, offset + begin, end - begin);
         }
 
         /**
-         * Конструктор, задающий элемент списка и позицию символа в нём
+         * Получить позицию первого символа блока в файле
          *
-         * @param index позиция символа
-         * @param node  элемент списка
+         * @return позиция в файле
          */
-        public Position(int index, StringItem node) {
-            this.position = index;
-            this.node = node;
+        long filePosition() {
+            return position + offset;
+        }
+
+        @Override
+        char charAt(int index) {
+            return (char) (buffer.get(offset + index) & 0xFF);
+        }
+
+        @Override
+        void setCharAt(int index, char symbol) {
+            throw new UnsupportedOperationException("Mapped block is read-only");
+        }
+
+        @Override
+        int indexOf(char symbol, int begin, int end) {
+            if (symbol > 0xFF)
+                return -1;
+            byte b = (byte) symbol;
+            for (int i = begin; i < end; i++)
+                if (buffer.get(offset + i) == b)
+                    return i;
+            return -1;
+        }
+
+        @Override
+        int lastIndexOf(char symbol, int begin, int end) {
+            if (symbol > 0xFF)
+                return -1;
+            byte b = (byte) symbol;
+            for (int i = end - 1; i >= begin; i--)
+                if (buffer.get(offset + i) == b)
+                    return i;
+            return -1;
+        }
+
+        @Override
+        void getChars(int begin, int end, char[] dst, int dstBegin) {
+            for (int i = begin; i < end; i++)
+                dst[dstBegin++] = (char) (buffer.get(offset + i) & 0xFF);
+        }
+
+        @Override
+        void getBytes(int begin, int end, byte[] dst, int dstBegin) {
+            buffer.get(offset + begin, dst, dstBegin, end - begin);
+        }
+
+        @Override
+        boolean isLatin1() {
+            return true;
         }
     }
 
     /**
-     * Голова списка
+     * Класс, последовательно записывающий блоки дерева в канал в кодировке Latin-1.
+     * Идущие подряд участки отображённого файла передаются одним вызовом
+     * {@link FileChannel#transferTo(long, long, WritableByteChannel)}
+     * из канала, через который файл был отображён
      */
-    private StringItem _head;
+    private static class Transfer {
+        /**
+         * Канал для записи
+         */
+        private final WritableByteChannel target;
+
+        /**
+         * Файл накопленного участка или null, если участка нет
+         */
+        private MappedFile runFile;
+
+        /**
+         * Позиция накопленного участка в файле
+         */
+        private long runPosition;
+
+        /**
+         * Длина накопленного участка
+         */
+        private long runLength;
+
+        /**
+         * Количество записанных байт
+         */
+        private long written;
+
+        /**
+         * Конструктор, задающий канал для записи
+         *
+         * @param target канал для записи
+         */
+        public Transfer(WritableByteChannel target) {
+            this.target = target;
+        }
+
+        /**
+         * Записать символы поддерева
+         *
+         * @param node поддерево
+         * @throws IOException если запись не удалась
+         */
+        void write(Node node) throws IOException {
+            if (node instanceof ConcatNode) {
+                write(((ConcatNode) node).left);
+                write(((ConcatNode) node).right);
+                return;
+            }
+            if (node instanceof MappedItem) {
+                MappedItem item = (MappedItem) node;
+                if (item.file != runFile || item.filePosition() != runPosition + runLength) {
+                    flush();
+                    runFile = item.file;
+                    runPosition = item.filePosition();
+                }
+                runLength += item.len;
+                return;
+            }
+            flush();
+            StringItem item = (StringItem) node;
+            byte[] bytes = item.bytes;
+            if (bytes == null) {
+                bytes = new byte[item.len];
+                for (int i = 0; i < item.len; i++) {
+                    char c = item.symbols[i];
+                    bytes[i] = c <= 0xFF ? (byte) c : (byte) '?';
+                }
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, item.len);
+            while (buffer.hasRemaining())
+                written += target.write(buffer);
+        }
+
+        /**
+         * Передать накопленный участок отображённого файла
+         *
+         * @throws EOFException если файл был укорочен после отображения
+         * @throws IOException  если передача не удалась
+         */
+        void flush() throws IOException {
+            if (runLength == 0)
+                return;
+            FileChannel source = runFile.channel;
+            long count = 0;
+            while (count < runLength) {
+                long n = source.transferTo(runPosition + count, runLength - count, target);
+                if (n <= 0) {
+                    if (runPosition + count >= source.size())
+                        throw new EOFException("Mapped file was truncated at " + source.size() + " bytes");
+                    throw new IOException("Channel accepted no bytes");
+                }
+                count += n;
+            }
+            written += count;
+            runFile = null;
+            runLength = 0;
+        }
+    }
+
     /**
-     * Длина строки
+     * Класс, представляющий внутренний узел дерева - конкатенацию двух поддеревьев
      */
-    private int _length;
+    private static class ConcatNode extends Node {
+        /**
+         * Левое поддерево
+         */
+        Node left;
+
+        /**
+         * Правое поддерево
+         */
+        Node right;
+
+        /**
+         * Количество символов в узле, растёт при дописывании в последний блок на месте
+         */
+        int length;
+
+        /**
+         * Высота узла
+         */
+        final int depth;
+
+        /**
+         * Хранятся ли все блоки узла в Latin-1
+         */
+        boolean latin1;
+
+        /**
+         * Конструктор, объединяющий два поддерева
+         *
+         * @param left  левое поддерево
+         * @param right правое поддерево
+         */
+        public ConcatNode(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+            this.length = left.length() + right.length();
+            this.depth = Math.max(left.depth(), right.depth()) + 1;
+            this.latin1 = left.isLatin1() && right.isLatin1();
+        }
+
+        /**
+         * Хэш-код объединения получается из хэш-кодов поддеревьев:
+         * h(left + right) = h(left) * 31^|right| + h(right)
+         */
+        @Override
+        int computeHash() {
+            return left.hash() * power31(right.length()) + right.hash();
+        }
+
+        @Override
+        int length() {
+            return length;
+        }
+
+        @Override
+        int depth() {
+            return depth;
+        }
+
+        @Override
+        void getChars(int begin, int end, char[] dst, int dstBegin) {
+            int leftLength = left.length();
+            if (begin < leftLength) {
+                int leftEnd = Math.min(end, leftLength);
+                left.getChars(begin, leftEnd, dst, dstBegin);
+                dstBegin += leftEnd - begin;
+            }
+            if (end > leftLength)
+                right.getChars(Math.max(begin - leftLength, 0), end - leftLength, dst, dstBegin);
+        }
+
+        @Override
+        void getBytes(int begin, int end, byte[] dst, int dstBegin) {
+            int leftLength = left.length();
+            if (begin < leftLength) {
+                int leftEnd = Math.min(end, leftLength);
+                left.getBytes(begin, leftEnd, dst, dstBegin);
+                dstBegin += leftEnd - begin;
+            }
+            if (end > leftLength)
+                right.getBytes(Math.max(begin - leftLength, 0), end - leftLength, dst, dstBegin);
+        }
+
+        @Override
+        boolean isLatin1() {
+            return latin1;
+        }
+    }
+
     /**
-     * Является ли этот список производным от String
+     * Класс, запоминающий блок, к которому было последнее обращение.
+     * Объект не изменяется, поэтому его можно заменять без синхронизации
      */
-    private boolean isFromString = false;
+    private static class Finger {
+        /**
+         * Корень дерева, в котором найден блок
+         */
+        final Node root;
+
+        /**
+         * Блок
+         */
+        final StringItem item;
+
+        /**
+         * Индекс первого символа блока в строке
+         */
+        final int start;
+
+        /**
+         * Конструктор, задающий блок и его положение в дереве
+         *
+         * @param root  корень дерева
+         * @param item  блок
+         * @param start индекс первого символа блока
+         */
+        public Finger(Node root, StringItem item, int start) {
+            this.root = root;
+            this.item = item;
+            this.start = start;
+        }
+
+        /**
+         * Найти блок с указанным символом
+         *
+         * @param root  корень дерева
+         * @param index индекс символа
+         * @return объект класса {@link Finger}
+         */
+        static Finger locate(Node root, int index) {
+            Node node = root;
+            int start = 0;
+            while (node instanceof ConcatNode) {
+                ConcatNode concat = (ConcatNode) node;
+                int leftLength = concat.left.length();
+                if (index - start < leftLength) {
+                    node = concat.left;
+                } else {
+                    start += leftLength;
+                    node = concat.right;
+                }
+            }
+            return new Finger(root, (StringItem) node, start);
+        }
+
+        /**
+         * Узнать, находится ли символ в запомненном блоке
+         *
+         * @param root  текущий корень дерева
+         * @param index индекс символа
+         * @return true, если символ находится в блоке
+         */
+        boolean contains(Node root, int index) {
+            return this.root == root && index >= start && index - start < item.len;
+        }
+
+        /**
+         * Получить символ блока
+         *
+         * @param index индекс символа в строке
+         * @return символ
+         */
+        char charAt(int index) {
+            return item.charAt(index - start);
+        }
+    }
+
+    /**
+     * Итератор по символам части дерева, проходящий блоки по порядку
+     */
+    private static class CharIterator implements PrimitiveIterator.OfInt {
+        /**
+         * Правые поддеревья, которые ещё предстоит пройти
+         */
+        private final ArrayDeque<Node> stack = new ArrayDeque<>();
+
+        /**
+         * Текущий блок
+         */
+        private StringItem item;
+
+        /**
+         * Индекс следующего символа в текущем блоке
+         */
+        private int position;
+
+        /**
+         * Количество оставшихся символов
+         */
+        private int remaining;
+
+        /**
+         * Конструктор итератора по символам [begin, end) дерева
+         *
+         * @param root  корень дерева
+         * @param begin начальный индекс
+         * @param end   конечный индекс
+         */
+        public CharIterator(Node root, int begin, int end) {
+            remaining = end - begin;
+            if (remaining == 0)
+                return;
+            Node node = root;
+            while (node instanceof ConcatNode) {
+                ConcatNode concat = (ConcatNode) node;
+                int leftLength = concat.left.length();
+                if (begin < leftLength) {
+                    stack.push(concat.right);
+                    node = concat.left;
+                } else {
+                    begin -= leftLength;
+                    node = concat.right;
+                }
+            }
+            item = (StringItem) node;
+            position = begin;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public int nextInt() {
+            if (remaining == 0)
+                throw new NoSuchElementException();
+            while (position == item.len) {
+                Node node = stack.pop();
+                while (node instanceof ConcatNode) {
+                    stack.push(((ConcatNode) node).right);
+                    node = ((ConcatNode) node).left;
+                }
+                item = (StringItem) node;
+                position = 0;
+            }
+            remaining--;
+            return item.charAt(position++);
+        }
+    }
+
+    /**
+     * Итератор по кодовым точкам, объединяющий суррогатные пары
+     */
+    private static class CodePointIterator implements PrimitiveIterator.OfInt {
+        /**
+         * Итератор по символам
+         */
+        private final CharIterator chars;
+
+        /**
+         * Прочитанный, но ещё не возвращённый символ или -1
+         */
+        private int pending = -1;
+
+        /**
+         * Конструктор итератора по кодовым точкам
+         *
+         * @param chars итератор по символам
+         */
+        public CodePointIterator(CharIterator chars) {
+            this.chars = chars;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return pending >= 0 || chars.hasNext();
+        }
+
+        @Override
+        public int nextInt() {
+            char high = (char) (pending >= 0 ? pending : chars.nextInt());
+            pending = -1;
+            if (Character.isHighSurrogate(high) && chars.hasNext()) {
+                char low = (char) chars.nextInt();
+                if (Character.isLowSurrogate(low))
+                    return Character.toCodePoint(high, low);
+                pending = low;
+            }
+            return high;
+        }
+    }
+
+    /**
+     * Класс, представляющий часть строки без копирования символов.
+     * Представление ссылается на снимок дерева и не видит последующих изменений списка
+     */
+    private static class View implements CharSequence {
+        /**
+         * Корень дерева
+         */
+        final Node root;
+
+        /**
+         * Начальный индекс в дереве
+         */
+        final int begin;
+
+        /**
+         * Конечный индекс в дереве
+         */
+        final int end;
+
+        /**
+         * Блок, к которому было последнее обращение
+         */
+        private Finger finger;
+
+        /**
+         * Конструктор представления символов [begin, end) дерева
+         *
+         * @param root  корень дерева
+         * @param begin начальный индекс
+         * @param end   конечный индекс
+         */
+        public View(Node root, int begin, int end) {
+            this.root = root;
+            this.begin = begin;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end - begin;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= end - begin)
+                throw new IndexOutOfBoundsException("index " + index + ",length " + (end - begin));
+            index += begin;
+            Finger finger = this.finger;
+            if (finger == null || !finger.contains(root, index))
+                this.finger = finger = Finger.locate(root, index);
+            return finger.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || start > end || end > this.end - begin)
+                throw new IndexOutOfBoundsException("begin " + start + ", end " + end + ", length " + (this.end - begin));
+            return new View(root, begin + start, begin + end);
+        }
+
+        @Override
+        public IntStream chars() {
+            return StringList.chars(root, begin, end);
+        }
+
+        @Override
+        public IntStream codePoints() {
+            return StringList.codePoints(root, begin, end);
+        }
+
+        @Override
+        public String toString() {
+            return StringList.toString(root, begin, end);
+        }
+    }
+
+    /**
+     * Класс для чтения символов дерева по индексу, который держит текущий блок
+     * и спускается по дереву только при выходе за его границы
+     */
+    private static class Cursor {
+        /**
+         * Корень дерева
+         */
+        private final Node root;
+
+        /**
+         * Текущий блок
+         */
+        private Finger finger;
+
+        /**
+         * Конструктор курсора по дереву
+         *
+         * @param root корень дерева
+         */
+        public Cursor(Node root) {
+            this.root = root;
+        }
+
+        /**
+         * Получить символ дерева
+         *
+         * @param index индекс символа
+         * @return символ
+         */
+        char charAt(int index) {
+            if (finger == null || !finger.contains(root, index))
+                finger = Finger.locate(root, index);
+            return finger.charAt(index);
+        }
+
+        /**
+         * Найти первое вхождение символа, просматривая блоки целиком
+         *
+         * @param symbol символ
+         * @param begin  начальный индекс
+         * @param end    конечный индекс
+         * @return индекс символа или -1, если символ не найден
+         */
+        int indexOf(char symbol, int begin, int end) {
+            while (begin < end) {
+                finger = Finger.locate(root, begin);
+                int blockEnd = Math.min(finger.item.len, end - finger.start);
+                int found = finger.item.indexOf(symbol, begin - finger.start, blockEnd);
+                if (found >= 0)
+                    return finger.start + found;
+                begin = finger.start + blockEnd;
+            }
+            return -1;
+        }
+
+        /**
+         * Найти последнее вхождение символа, просматривая блоки целиком
+         *
+         * @param symbol символ
+         * @param begin  начальный индекс
+         * @param end    конечный индекс
+         * @return индекс символа или -1, если символ не найден
+         */
+        int lastIndexOf(char symbol, int begin, int end) {
+            while (begin < end) {
+                finger = Finger.locate(root, end - 1);
+                int blockBegin = Math.max(begin - finger.start, 0);
+                int found = finger.item.lastIndexOf(symbol, blockBegin, end - finger.start);
+                if (found >= 0)
+                    return finger.start + found;
+                end = finger.start + blockBegin;
+            }
+            return -1;
+        }
+
+        /**
+         * Сравнить часть дерева с образцом
+         *
+         * @param index   индекс в дереве, с которого начинается сравнение
+         * @param pattern образец
+         * @return true, если символы совпадают
+         */
+        boolean regionMatches(int index, char[] pattern) {
+            for (int i = 0; i < pattern.length; i++)
+                if (charAt(index + i) != pattern[i])
+                    return false;
+            return true;
+        }
+    }
+
+    /**
+     * Класс, реализующий поиск подстроки алгоритмом Бойера-Мура-Хорспула.
+     * Таблица сдвигов строится по младшему байту символа: при совпадении
+     * младших байт у разных символов берётся меньший сдвиг, что сохраняет корректность
+     */
+    private static class Horspool {
+        /**
+         * Образец
+         */
+        private final char[] pattern;
+
+        /**
+         * Сдвиги для поиска слева направо
+         */
+        private final int[] shift = new int[256];
+
+        /**
+         * Сдвиги для поиска справа налево
+         */
+        private final int[] backShift = new int[256];
+
+        /**
+         * Конструктор, строящий таблицы сдвигов для образца
+         *
+         * @param pattern образец, не короче двух символов
+         */
+        public Horspool(char[] pattern) {
+            this.pattern = pattern;
+            int m = pattern.length;
+            Arrays.fill(shift, m);
+            Arrays.fill(backShift, m);
+            for (int i = 0; i < m - 1; i++)
+                shift[pattern[i] & 0xFF] = m - 1 - i;
+            for (int i = m - 1; i > 0; i--)
+                backShift[pattern[i] & 0xFF] = i;
+        }
+
+        /**
+         * Найти первое вхождение образца, начинающееся не раньше begin
+         *
+         * @param cursor курсор по дереву
+         * @param begin  начальный индекс
+         * @param length длина строки
+         * @return индекс вхождения или -1, если образец не найден
+         */
+        int indexOf(Cursor cursor, int begin, int length) {
+            int m = pattern.length;
+            char last = pattern[m - 1];
+            for (int position = begin; position <= length - m; ) {
+                char c = cursor.charAt(position + m - 1);
+                if (c == last) {
+                    int j = m - 2;
+                    while (j >= 0 && cursor.charAt(position + j) == pattern[j])
+                        j--;
+                    if (j < 0)
+                        return position;
+                }
+                position += shift[c & 0xFF];
+            }
+            return -1;
+        }
+
+        /**
+         * Найти последнее вхождение образца, начинающееся не позже begin
+         *
+         * @param cursor курсор по дереву
+         * @param begin  наибольший индекс начала вхождения
+         * @return индекс вхождения или -1, если образец не найден
+         */
+        int lastIndexOf(Cursor cursor, int begin) {
+            int m = pattern.length;
+            char first = pattern[0];
+            for (int position = begin; position >= 0; ) {
+                char c = cursor.charAt(position);
+                if (c == first) {
+                    int j = 1;
+                    while (j < m && cursor.charAt(position + j) == pattern[j])
+                        j++;
+                    if (j == m)
+                        return position;
+                }
+                position -= backShift[c & 0xFF];
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Итератор по индексам всех вхождений подстроки, в том числе перекрывающихся
+     */
+    private static class OccurrenceIterator implements PrimitiveIterator.OfInt {
+        /**
+         * Курсор по снимку дерева
+         */
+        private final Cursor cursor;
+
+        /**
+         * Образец
+         */
+        private final char[] pattern;
+
+        /**
+         * Поиск по образцу или null для образцов короче двух символов
+         */
+        private final Horspool horspool;
+
+        /**
+         * Длина строки
+         */
+        private final int length;
+
+        /**
+         * Индекс следующего вхождения или -1
+         */
+        private int next;
+
+        /**
+         * Конструктор итератора по вхождениям образца
+         *
+         * @param root    корень дерева
+         * @param length  длина строки
+         * @param pattern образец
+         */
+        public OccurrenceIterator(Node root, int length, char[] pattern) {
+            this.cursor = new Cursor(root);
+            this.pattern = pattern;
+            this.horspool = pattern.length > 1 ? new Horspool(pattern) : null;
+            this.length = length;
+            this.next = find(0);
+        }
+
+        /**
+         * Найти вхождение, начинающееся не раньше указанного индекса
+         *
+         * @param begin начальный индекс
+         * @return индекс вхождения или -1
+         */
+        private int find(int begin) {
+            if (pattern.length == 0)
+                return begin <= length ? begin : -1;
+            if (horspool == null)
+                return cursor.indexOf(pattern[0], begin, length);
+            return horspool.indexOf(cursor, begin, length);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next >= 0;
+        }
+
+        @Override
+        public int nextInt() {
+            if (next < 0)
+                throw new NoSuchElementException();
+            int ret = next;
+            next = find(ret + 1);
+            return ret;
+        }
+    }
+
+    /**
+     * Пул массивов для блоков, свой у каждого потока. Массивы попадают в пул
+     * из списков, освобождённых методом {@link #release()}, и из блоков,
+     * переведённых из Latin-1 в UTF-16, а забираются классом {@link Builder}
+     */
+    private static class BlockPool {
+        /**
+         * Наибольший объём массивов в пуле одного потока, в байтах
+         */
+        static final int MAX_RETAINED = 1 << 20;
+
+        /**
+         * Пулы потоков
+         */
+        static final ThreadLocal<BlockPool> LOCAL = ThreadLocal.withInitial(BlockPool::new);
+
+        /**
+         * Свободные массивы байт по вместимости
+         */
+        private final Map<Integer, ArrayDeque<byte[]>> bytes = new HashMap<>();
+
+        /**
+         * Свободные символьные массивы по вместимости
+         */
+        private final Map<Integer, ArrayDeque<char[]>> chars = new HashMap<>();
+
+        /**
+         * Объём массивов в пуле, в байтах
+         */
+        private int retained;
+
+        /**
+         * Получить пул текущего потока
+         *
+         * @return пул
+         */
+        static BlockPool get() {
+            return LOCAL.get();
+        }
+
+        /**
+         * Взять массив байт из пула или создать новый
+         *
+         * @param capacity вместимость массива
+         * @return массив, его содержимое не определено
+         */
+        byte[] takeBytes(int capacity) {
+            ArrayDeque<byte[]> free = bytes.get(capacity);
+            byte[] array = free != null ? free.pollLast() : null;
+            if (array == null)
+                return new byte[capacity];
+            retained -= capacity;
+            return array;
+        }
+
+        /**
+         * Взять символьный массив из пула или создать новый
+         *
+         * @param capacity вместимость массива
+         * @return массив, его содержимое не определено
+         */
+        char[] takeChars(int capacity) {
+            ArrayDeque<char[]> free = chars.get(capacity);
+            char[] array = free != null ? free.pollLast() : null;
+            if (array == null)
+                return new char[capacity];
+            retained -= 2 * capacity;
+            return array;
+        }
+
+        /**
+         * Вернуть массив байт в пул
+         *
+         * @param array массив, на который больше никто не ссылается
+         */
+        void give(byte[] array) {
+            if (retained + array.length > MAX_RETAINED)
+                return;
+            retained += array.length;
+            bytes.computeIfAbsent(array.length, k -> new ArrayDeque<>()).addLast(array);
+        }
+
+        /**
+         * Вернуть символьный массив в пул
+         *
+         * @param array массив, на который больше никто не ссылается
+         */
+        void give(char[] array) {
+            if (retained + 2 * array.length > MAX_RETAINED)
+                return;
+            retained += 2 * array.length;
+            chars.computeIfAbsent(array.length, k -> new ArrayDeque<>()).addLast(array);
+        }
+
+        /**
+         * Вернуть в пул массивы блока
+         *
+         * @param item блок, на который больше никто не ссылается
+         */
+        void give(StringItem item) {
+            if (item instanceof MappedItem)
+                return;
+            if (item.bytes != null)
+                give(item.bytes);
+            if (item.symbols != null)
+                give(item.symbols);
+            item.bytes = null;
+            item.symbols = null;
+            item.len = 0;
+        }
+    }
+
+    /**
+     * Класс, представляющий отчёт о занимаемой списком памяти.
+     * Размеры оцениваются для 64-битной JVM со сжатыми ссылками
+     */
+    public static class MemoryFootprint {
+        /**
+         * Размер заголовка объекта в байтах
+         */
+        private final static int OBJECT_HEADER = 12;
+        /**
+         * Размер заголовка массива в байтах
+         */
+        private final static int ARRAY_HEADER = 16;
+        /**
+         * Размер ссылки в байтах
+         */
+        private final static int REFERENCE = 4;
+
+        /**
+         * Длина строки
+         */
+        private int length;
+        /**
+         * Количество блоков
+         */
+        private int blocks;
+        /**
+         * Количество блоков в кодировке Latin-1
+         */
+        private int compactBlocks;
+        /**
+         * Количество блоков, ссылающихся на отображённый файл
+         */
+        private int mappedBlocks;
+        /**
+         * Количество символов в блоках, ссылающихся на отображённый файл
+         */
+        private long mappedLength;
+        /**
+         * Количество внутренних узлов дерева
+         */
+        private int nodes;
+        /**
+         * Высота дерева: поиск символа и правка проходят не больше этого числа узлов
+         */
+        private int depth;
+        /**
+         * Суммарная вместимость блоков в символах
+         */
+        private long capacity;
+        /**
+         * Оценка занимаемой памяти в байтах
+         */
+        private long bytes;
+
+        /**
+         * Выровнять размер объекта по 8 байтам
+         *
+         * @param size размер объекта
+         * @return выровненный размер
+         */
+        private static long align(long size) {
+            return (size + 7) & ~7L;
+        }
+
+        /**
+         * Учесть в отчёте все узлы поддерева
+         *
+         * @param node поддерево
+         */
+        private void add(Node node) {
+            if (node instanceof MappedItem) {
+                mappedBlocks++;
+                mappedLength += ((MappedItem) node).len;
+                bytes += align(OBJECT_HEADER + 6 * REFERENCE + 2 * Integer.BYTES + Long.BYTES);
+            } else if (node instanceof StringItem) {
+                StringItem item = (StringItem) node;
+                blocks++;
+                bytes += align(OBJECT_HEADER + 3 * REFERENCE + Integer.BYTES);
+                if (item.bytes != null) {
+                    compactBlocks++;
+                    capacity += item.bytes.length;
+                    bytes += align(ARRAY_HEADER + item.bytes.length);
+                } else {
+                    capacity += item.symbols.length;
+                    bytes += align(ARRAY_HEADER + (long) Character.BYTES * item.symbols.length);
+                }
+            } else {
+                ConcatNode concat = (ConcatNode) node;
+                nodes++;
+                bytes += align(OBJECT_HEADER + 3 * REFERENCE + 2 * Integer.BYTES + 1);
+                add(concat.left);
+                add(concat.right);
+            }
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public int getBlocks() {
+            return blocks;
+        }
+
+        public int getCompactBlocks() {
+            return compactBlocks;
+        }
+
+        public int getMappedBlocks() {
+            return mappedBlocks;
+        }
+
+        public long getMappedLength() {
+            return mappedLength;
+        }
+
+        public int getNodes() {
+            return nodes;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public long getCapacity() {
+            return capacity;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Получить среднее количество байт на символ строки
+         *
+         * @return байт на символ
+         */
+        public double getBytesPerChar() {
+            return length == 0 ? 0 : (double) bytes / length;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("length %d, blocks %d (%d Latin-1), mapped blocks %d (%d chars), nodes %d, "
+                                 + "depth %d, capacity %d, bytes %d (%.2f per char)",
+                    length, blocks, compactBlocks, mappedBlocks, mappedLength, nodes, depth, capacity, bytes,
+                    getBytesPerChar());
+        }
+    }
+
+    /**
+     * Класс для построения списка из множества фрагментов. Символы пишутся
+     * сразу в блоки полного размера, каждый блок создаётся один раз, а массивы
+     * для блоков по возможности берутся из пула потока, см. {@link #release()}.
+     * Фрагменты-списки {@link StringList} добавляются без копирования символов.
+     * Объект не потокобезопасен
+     */
+    public static class Builder implements Appendable {
+        /**
+         * Список, узлы которого строит объект: его метка ставится на новые блоки,
+         * а методы соединения деревьев используются при сборке
+         */
+        private StringList _list;
+
+        /**
+         * Размер блока или 0, если размер выбирается по накопленной длине
+         */
+        private final int _blockSize;
+
+        /**
+         * Готовые блоки и добавленные поддеревья в порядке следования
+         */
+        private final List<Node> pieces = new ArrayList<>();
+
+        /**
+         * Заполняемый блок или null
+         */
+        private StringItem block;
+
+        /**
+         * Количество символов в готовых частях
+         */
+        private int length;
+
+        /**
+         * Конструктор, выбирающий размер блоков по накопленной длине так же,
+         * как {@link StringList#StringList(String)}
+         */
+        public Builder() {
+            _list = new StringList(MAX_BLOCK_SIZE);
+            _blockSize = 0;
+        }
+
+        /**
+         * Конструктор с указанным размером блока
+         *
+         * @param blockSize размер блока
+         * @throws IllegalArgumentException если размер блока не лежит в пределах [1, {@link #MAX_BLOCK_SIZE}]
+         */
+        public Builder(int blockSize) {
+            _list = new StringList(blockSize);
+            _blockSize = blockSize;
+        }
+
+        /**
+         * Конструктор для перестройки дерева существующего списка
+         *
+         * @param list      список
+         * @param blockSize размер блока
+         */
+        private Builder(StringList list, int blockSize) {
+            _list = list;
+            _blockSize = blockSize;
+        }
+
+        /**
+         * Получить количество накопленных символов
+         *
+         * @return количество символов
+         */
+        public int length() {
+            return block != null ? length + block.len : length;
+        }
+
+        @Override
+        public Builder append(CharSequence csq) {
+            if (csq == null) csq = "null";
+            return append(csq, 0, csq.length());
+        }
+
+        @Override
+        public Builder append(CharSequence csq, int start, int end) {
+            if (csq == null) csq = "null";
+            _list.checkBoundsBeginEnd(start, end, csq.length());
+            if (csq instanceof StringList || csq instanceof View) {
+                appendNode(_list.toNode(csq, start, end));
+                return this;
+            }
+            while (start < end) {
+                int n = reserve(end - start);
+                if (block.bytes != null) {
+                    byte[] bytes = block.bytes;
+                    int len = block.len;
+                    int i = 0;
+                    for (char c; i < n && (c = csq.charAt(start + i)) <= 0xFF; i++)
+                        bytes[len + i] = (byte) c;
+                    block.len += i;
+                    start += i;
+                    if (i < n)
+                        inflate();
+                    continue;
+                }
+                if (csq instanceof String)
+                    ((String) csq).getChars(start, start + n, block.symbols, block.len);
+                else
+                    for (int i = 0; i < n; i++)
+                        block.symbols[block.len + i] = csq.charAt(start + i);
+                block.len += n;
+                start += n;
+            }
+            return this;
+        }
+
+        @Override
+        public Builder append(char c) {
+            reserve(1);
+            if (block.bytes != null && c > 0xFF)
+                inflate();
+            if (block.bytes != null)
+                block.bytes[block.len++] = (byte) c;
+            else
+                block.symbols[block.len++] = c;
+            return this;
+        }
+
+        /**
+         * Добавить символы массива
+         *
+         * @param chars символьный массив
+         * @param begin начальный индекс
+         * @param end   конечный индекс
+         * @return ссылка на текущий объект
+         */
+        public Builder append(char[] chars, int begin, int end) {
+            _list.checkBoundsBeginEnd(begin, end, chars.length);
+            while (begin < end) {
+                int n = reserve(end - begin);
+                if (block.bytes != null) {
+                    byte[] bytes = block.bytes;
+                    int len = block.len;
+                    int i = 0;
+                    for (char c; i < n && (c = chars[begin + i]) <= 0xFF; i++)
+                        bytes[len + i] = (byte) c;
+                    block.len += i;
+                    begin += i;
+                    if (i < n)
+                        inflate();
+                    continue;
+                }
+                System.arraycopy(chars, begin, block.symbols, block.len, n);
+                block.len += n;
+                begin += n;
+            }
+            return this;
+        }
+
+        /**
+         * Добавить копию символов [begin, end) дерева
+         *
+         * @param root  корень дерева
+         * @param begin начальный индекс
+         * @param end   конечный индекс
+         */
+        void append(Node root, int begin, int end) {
+            while (begin < end) {
+                Finger finger = Finger.locate(root, begin);
+                StringItem item = finger.item;
+                int itemEnd = Math.min(item.len, end - finger.start);
+                int from = begin - finger.start;
+                while (from < itemEnd) {
+                    int n = reserve(itemEnd - from);
+                    if (block.bytes != null && item.isLatin1())
+                        item.getBytes(from, from + n, block.bytes, block.len);
+                    else {
+                        if (block.bytes != null)
+                            inflate();
+                        item.getChars(from, from + n, block.symbols, block.len);
+                    }
+                    block.len += n;
+                    from += n;
+                }
+                begin = finger.start + itemEnd;
+            }
+        }
+
+        /**
+         * Добавить поддерево без копирования символов
+         *
+         * @param node поддерево, может быть null
+         */
+        void appendNode(Node node) {
+            if (node == null || node.length() == 0)
+                return;
+            finishBlock();
+            if (length > Integer.MAX_VALUE - node.length())
+                throw new OutOfMemoryError("Builder length exceeds Integer.MAX_VALUE");
+            pieces.add(node);
+            length += node.length();
+        }
+
+        /**
+         * Получить размер очередного блока. Без заданного размера блок не меньше
+         * {@link #EDIT_BLOCK_SIZE}, чтобы соседние блоки не склеивались при сборке
+         *
+         * @return размер блока
+         */
+        private int nextBlockSize() {
+            return _blockSize != 0 ? _blockSize : Math.max(adaptiveBlockSize(length), EDIT_BLOCK_SIZE);
+        }
+
+        /**
+         * Подготовить заполняемый блок со свободным местом
+         *
+         * @param wanted сколько символов нужно записать
+         * @return сколько символов можно записать в заполняемый блок
+         */
+        private int reserve(int wanted) {
+            if (block != null && block.len == block.capacity())
+                finishBlock();
+            if (block == null) {
+                block = new StringItem();
+                block.bytes = BlockPool.get().takeBytes(nextBlockSize());
+                block.owner = _list._owner;
+            }
+            if (length + block.len > Integer.MAX_VALUE - wanted)
+                throw new OutOfMemoryError("Builder length exceeds Integer.MAX_VALUE");
+            return Math.min(block.capacity() - block.len, wanted);
+        }
+
+        /**
+         * Перевести заполняемый блок в UTF-16
+         */
+        private void inflate() {
+            BlockPool pool = BlockPool.get();
+            char[] symbols = pool.takeChars(block.bytes.length);
+            block.getChars(0, block.len, symbols, 0);
+            pool.give(block.bytes);
+            block.bytes = null;
+            block.symbols = symbols;
+        }
+
+        /**
+         * Завершить заполняемый блок. Если он заполнен меньше чем наполовину,
+         * то символы переносятся в блок по размеру, а массив возвращается в пул
+         */
+        private void finishBlock() {
+            if (block == null)
+                return;
+            StringItem item = block;
+            block = null;
+            if (item.len == 0) {
+                BlockPool.get().give(item);
+                return;
+            }
+            if (item.len < item.capacity() / 2) {
+                StringItem copy = new StringItem(item, 0, item.len);
+                copy.owner = item.owner;
+                BlockPool.get().give(item);
+                item = copy;
+            }
+            pieces.add(item);
+            length += item.len;
+        }
+
+        /**
+         * Собрать дерево из накопленных частей и очистить объект
+         *
+         * @return корень дерева или null, если частей нет
+         */
+        private Node finish() {
+            finishBlock();
+            Node root = _list.joinAll(pieces, 0, pieces.size());
+            pieces.clear();
+            length = 0;
+            return root;
+        }
+
+        /**
+         * Построить список из накопленных символов. После построения объект
+         * пуст и может собирать следующий список
+         *
+         * @return новый список
+         */
+        public StringList build() {
+            StringList result = new StringList(_blockSize != 0 ? _blockSize : adaptiveBlockSize(length()));
+            result._owner = _list._owner;
+            result.setRoot(finish());
+            _list = new StringList(_list._blockSize);
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(length());
+            for (Node piece : pieces)
+                sb.append(StringList.toString(piece, 0, piece.length()));
+            if (block != null)
+                sb.append(StringList.toString(block, 0, block.len));
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Размер блока по умолчанию
+     */
+    public final static int DEFAULT_BLOCK_SIZE = 16;
+    /**
+     * Максимальный размер блока, 64 КБ символов UTF-16
+     */
+    public final static int MAX_BLOCK_SIZE = 32768;
+    /**
+     * Размер блоков, создаваемых рядом с местом редактирования.
+     * Небольшие блоки вокруг точки правки делают повторные правки в ней дешёвыми,
+     * не дробя при этом остальной текст
+     */
+    private final static int EDIT_BLOCK_SIZE = 64;
+    /**
+     * Максимальный размер участка файла, отображаемого одним буфером
+     */
+    private final static int MAPPED_CHUNK_SIZE = 1 << 30;
+    /**
+     * Размер буферов потокового чтения и записи
+     */
+    private final static int IO_BUFFER_SIZE = 8192;
+
+    /**
+     * Корень дерева строки
+     */
+    private Node _root;
+    /**
+     * Размер блоков, на которые разбивается строка при построении списка.
+     * Дописываемый текст складывается в блоки не меньше этого размера
+     */
+    private final int _blockSize;
+    /**
+     * Метка узлов, принадлежащих только этому списку. Заменяется новой каждый раз,
+     * когда узлы списка становятся общими с другим списком
+     */
+    private Object _owner = new Object();
+    /**
+     * Блок, к которому было последнее обращение через {@link #charAt(int)}.
+     * Последовательное чтение, например регулярными выражениями, не спускается
+     * по дереву для каждого символа
+     */
+    private Finger _finger;
+
+    /**
+     * Default constructor
+     */
+    public StringList() {
+        this(DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Конструктор пустого списка с указанным размером блока
+     *
+     * @param blockSize размер блока
+     * @throws IllegalArgumentException если размер блока не лежит в пределах [1, {@link #MAX_BLOCK_SIZE}]
+     */
+    public StringList(int blockSize) {
+        if (blockSize < 1 || blockSize > MAX_BLOCK_SIZE)
+            throw new IllegalArgumentException("Wrong block size " + blockSize);
+        _root = null;
+        _blockSize = blockSize;
+    }
+
+    /**
+     * Конструктор, в котором реализовано преобразование стринга в объект класса {@link StringList}.
+     * Размер блока выбирается по длине строки
+     *
+     * @param string строка
+     */
+    public StringList(String string) {
+        this(string, adaptiveBlockSize(string.length()));
+    }
+
+    /**
+     * Конструктор, преобразующий стринг в объект класса {@link StringList}
+     * с указанным размером блока
+     *
+     * @param string    строка
+     * @param blockSize размер блока
+     * @throws IllegalArgumentException если размер блока не лежит в пределах [1, {@link #MAX_BLOCK_SIZE}]
+     */
+    public StringList(String string, int blockSize) {
+        this(blockSize);
+        _root = build(string, 0, string.length(), blockSize);
+    }
+
+    /**
+     * Конструктор, создающий копию переданного списка. Копия разделяет узлы
+     * с оригиналом и создаётся за O(1), а узел копируется, только когда
+     * в него пишет один из списков
+     *
+     * @param stringList список
+     */
+    public StringList(StringList stringList) {
+        this(stringList != null ? stringList._blockSize : DEFAULT_BLOCK_SIZE);
+        if (stringList != null)
+            _root = stringList.share();
+    }
+
+    /**
+     * Построить список поверх отображённого в память файла. Каждый байт файла
+     * считается символом Latin-1, поэтому режим подходит для ASCII и Latin-1 текста.
+     * Файл не читается: список ссылается на отображение, а в куче создаются только
+     * блоки, которые были изменены. Файл не должен изменяться, пока список используется
+     *
+     * @param path путь к файлу
+     * @return новый объект класса {@link StringList}
+     * @throws IOException              если файл не удалось отобразить
+     * @throws IllegalArgumentException если файл длиннее {@link Integer#MAX_VALUE} байт
+     */
+    public static StringList map(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("File is too large: " + size + " bytes");
+            StringList list = new StringList(adaptiveBlockSize((int) size));
+            MappedFile file = new MappedFile(channel);
+            int count = Math.max((int) ((size + MAPPED_CHUNK_SIZE - 1) / MAPPED_CHUNK_SIZE), 1);
+            StringItem[] items = new StringItem[count];
+            for (int i = 0; i < count; i++) {
+                long position = (long) i * MAPPED_CHUNK_SIZE;
+                int length = (int) Math.min(MAPPED_CHUNK_SIZE, size - position);
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                items[i] = new MappedItem(file, buffer, position, 0, length);
+            }
+            list._root = list.build(items, 0, count);
+            return list;
+        } catch (IOException | RuntimeException | Error e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Прочитать символы из потока до его конца. Символы пишутся в блоки
+     * через небольшой буфер, вся строка целиком в памяти не собирается.
+     * Поток не закрывается
+     *
+     * @param reader поток символов
+     * @return новый список
+     * @throws IOException если чтение не удалось
+     */
+    public static StringList read(Reader reader) throws IOException {
+        Builder builder = new Builder();
+        char[] buffer = new char[IO_BUFFER_SIZE];
+        for (int n; (n = reader.read(buffer)) >= 0; )
+            builder.append(buffer, 0, n);
+        return builder.build();
+    }
+
+    /**
+     * Прочитать и декодировать байты из канала до его конца. Некорректные
+     * последовательности байт заменяются, как в {@link java.io.InputStreamReader}.
+     * Канал должен быть блокирующим, он не закрывается
+     *
+     * @param channel канал
+     * @param charset кодировка
+     * @return новый список
+     * @throws IOException если чтение не удалось
+     */
+    public static StringList read(ReadableByteChannel channel, Charset charset) throws IOException {
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer in = ByteBuffer.allocate(IO_BUFFER_SIZE);
+        CharBuffer out = CharBuffer.allocate(IO_BUFFER_SIZE);
+        Builder builder = new Builder();
+        boolean endOfInput = false;
+        while (!endOfInput) {
+            endOfInput = channel.read(in) < 0;
+            in.flip();
+            CoderResult result;
+            do {
+                result = decoder.decode(in, out, endOfInput);
+                builder.append(out.array(), 0, out.position());
+                out.clear();
+            } while (result.isOverflow());
+            in.compact();
+        }
+        CoderResult result;
+        do {
+            result = decoder.flush(out);
+            builder.append(out.array(), 0, out.position());
+            out.clear();
+        } while (result.isOverflow());
+        return builder.build();
+    }
+
+    //--------------------------Приватные методы--------------------------------
+
+    /**
+     * Отдать дерево списка в совместное использование. Список получает новую метку,
+     * поэтому дальнейшая запись в уже существующие узлы будет их копировать
+     *
+     * @return корень дерева
+     */
+    private Node share() {
+        _owner = new Object();
+        return _root;
+    }
+
+    /**
+     * Пометить узел как принадлежащий только этому списку
+     *
+     * @param node узел
+     * @return этот же узел
+     */
+    private <T extends Node> T own(T node) {
+        node.owner = _owner;
+        return node;
+    }
+
+    /**
+     * Создать узел, принадлежащий этому списку, из двух поддеревьев
+     *
+     * @param left  левое поддерево
+     * @param right правое поддерево
+     * @return новый узел
+     */
+    private ConcatNode concat(Node left, Node right) {
+        return own(new ConcatNode(left, right));
+    }
+
+    /**
+     * Построить сбалансированное дерево из блоков последовательности символов
+     *
+     * @param string    последовательность символов
+     * @param begin     начальный индекс
+     * @param end       конечный индекс
+     * @param blockSize размер блока
+     * @return корень дерева
+     */
+    private Node build(CharSequence string, int begin, int end, int blockSize) {
+        int length = end - begin;
+        int count = Math.max((length + blockSize - 1) / blockSize, 1);
+        StringItem[] items = new StringItem[count];
+        char[] buffer = new char[Math.min(blockSize, length)];
+        int offset = begin;
+        for (int i = 0; i < count; i++) {
+            int blockEnd = Math.min(offset + blockSize, end);
+            if (string instanceof String)
+                ((String) string).getChars(offset, blockEnd, buffer, 0);
+            else if (string instanceof StringBuilder)
+                ((StringBuilder) string).getChars(offset, blockEnd, buffer, 0);
+            else
+                for (int j = offset; j < blockEnd; j++)
+                    buffer[j - offset] = string.charAt(j);
+            items[i] = own(new StringItem(buffer, 0, blockEnd - offset));
+            offset = blockEnd;
+        }
+        return build(items, 0, count);
+    }
+
+    /**
+     * Построить сбалансированное дерево из последовательности блоков
+     *
+     * @param items блоки
+     * @param begin индекс первого блока
+     * @param end   индекс, следующий за последним блоком
+     * @return корень дерева
+     */
+    private Node build(Node[] items, int begin, int end) {
+        if (end - begin == 1)
+            return items[begin];
+        int middle = (begin + end) >>> 1;
+        return concat(build(items, begin, middle), build(items, middle, end));
+    }
+
+    /**
+     * Выбрать размер блока по длине строки: короткие строки хранятся мелкими
+     * блоками, длинные - блоками до {@link #MAX_BLOCK_SIZE} символов
+     *
+     * @param length длина строки
+     * @return размер блока
+     */
+    private static int adaptiveBlockSize(int length) {
+        int size = Integer.highestOneBit(Math.max(length >> 8, 1));
+        return Math.max(DEFAULT_BLOCK_SIZE, Math.min(size, MAX_BLOCK_SIZE));
+    }
+
+    /**
+     * Выбрать размер блоков для дописываемого или вставляемого текста: размер блока
+     * списка, но не меньше {@link #EDIT_BLOCK_SIZE} и не меньше размера, который
+     * конструктор выбрал бы для строки получившейся длины. Поэтому список,
+     * собранный дописыванием, состоит из таких же блоков, как построенный из целой строки
+     *
+     * @param count количество добавляемых символов
+     * @return размер блока
+     */
+    private int textBlockSize(int count) {
+        int length = (int) Math.min((long) length() + count, Integer.MAX_VALUE);
+        return Math.max(Math.max(_blockSize, EDIT_BLOCK_SIZE), adaptiveBlockSize(length));
+    }
+
+    /**
+     * Найти последний блок, в который можно дописывать на месте: блок и все узлы
+     * на пути к нему принадлежат этому списку, и блок короче указанного размера.
+     * Массив блока растёт вдвое, но не больше указанного размера, поэтому
+     * при дописывании по одному символу каждый символ копируется O(1) раз
+     *
+     * @param wanted    сколько символов нужно дописать
+     * @param blockSize наибольшая длина блока
+     * @return блок, в массиве которого есть место хотя бы для одного символа, или null
+     */
+    private StringItem tailWithRoom(int wanted, int blockSize) {
+        Node node = _root;
+        while (node instanceof ConcatNode && node.owner == _owner)
+            node = ((ConcatNode) node).right;
+        if (!(node instanceof StringItem) || node instanceof MappedItem || node.owner != _owner)
+            return null;
+        StringItem item = (StringItem) node;
+        int needed = Math.min(item.len + wanted, blockSize);
+        if (needed <= item.len)
+            return null;
+        int capacity = item.capacity();
+        if (needed > capacity) {
+            int grown = Math.min(Math.max(needed, 2 * capacity), blockSize);
+            if (item.bytes != null)
+                item.bytes = Arrays.copyOf(item.bytes, grown);
+            else
+                item.symbols = Arrays.copyOf(item.symbols, grown);
+        }
+        return item;
+    }
+
+    /**
+     * Учесть символы, дописанные в последний блок на месте, в узлах на пути к нему
+     *
+     * @param tail  последний блок
+     * @param count количество дописанных символов
+     */
+    private void tailGrown(StringItem tail, int count) {
+        for (Node node = _root; node instanceof ConcatNode; node = ((ConcatNode) node).right) {
+            ConcatNode concat = (ConcatNode) node;
+            concat.length += count;
+            concat.latin1 = concat.latin1 && tail.isLatin1();
+            concat.resetHash();
+        }
+    }
+
+    /**
+     * Дописать символы последовательности в конец строки. Символы сначала
+     * дописываются в последний блок, пока в нём есть место, а остаток
+     * разбивается на блоки размера {@link #textBlockSize(int)}
+     *
+     * @param csq   последовательность символов
+     * @param start начальный индекс
+     * @param end   конечный индекс
+     */
+    private void appendText(CharSequence csq, int start, int end) {
+        int blockSize = textBlockSize(end - start);
+        StringItem tail = start < end ? tailWithRoom(end - start, blockSize) : null;
+        if (tail != null) {
+            int count = Math.min(end - start, Math.min(tail.capacity(), blockSize) - tail.len);
+            tail.append(csq, start, start + count);
+            tailGrown(tail, count);
+            start += count;
+        }
+        if (start < end || _root == null)
+            _root = join(_root, build(csq, start, end, blockSize));
+    }
+
+    /**
+     * Возвести 31 в степень по модулю 2^32
+     *
+     * @param exponent показатель степени
+     * @return 31 в степени exponent
+     */
+    private static int power31(int exponent) {
+        int result = 1;
+        int base = 31;
+        while (exponent > 0) {
+            if ((exponent & 1) != 0)
+                result *= base;
+            base *= base;
+            exponent >>= 1;
+        }
+        return result;
+    }
+
+    /**
+     * Сравнить символы двух деревьев одинаковой длины, проходя блоки обоих деревьев по порядку
+     *
+     * @param first  корень первого дерева
+     * @param second корень второго дерева
+     * @param length длина деревьев
+     * @return true, если символы совпадают
+     */
+    private static boolean contentEquals(Node first, Node second, int length) {
+        int index = 0;
+        while (index < length) {
+            Finger a = Finger.locate(first, index);
+            Finger b = Finger.locate(second, index);
+            int end = Math.min(a.start + a.item.len, b.start + b.item.len);
+            if (a.item != b.item || a.start != b.start) {
+                if (!a.item.regionEquals(index - a.start, b.item, index - b.start, end - index))
+                    return false;
+            }
+            index = end;
+        }
+        return true;
+    }
 
     /**
-     * Default constructor
+     * Объединить два поддерева с сохранением баланса. Если символы обоих
+     * поддеревьев помещаются в один блок размера {@link #EDIT_BLOCK_SIZE}, то они
+     * компонуются в новый блок. Так же небольшой блок склеивается с соседним
+     * крайним блоком другого поддерева, поэтому вставки не оставляют мелких блоков
+     *
+     * @param left  левое поддерево, может быть null
+     * @param right правое поддерево, может быть null
+     * @return корень объединённого дерева
      */
-    public StringList() {
-        _head = null;
+    private Node join(Node left, Node right) {
+        if (left == null || (right != null && left.length() == 0))
+            return right;
+        if (right == null || right.length() == 0)
+            return left;
+        if (left.length() + right.length() <= EDIT_BLOCK_SIZE) {
+            int length = left.length() + right.length();
+            if (left.isLatin1() && right.isLatin1()) {
+                StringItem node = own(new StringItem(length));
+                left.getBytes(0, left.length(), node.bytes, 0);
+                right.getBytes(0, right.length(), node.bytes, left.length());
+                node.len = length;
+                return node;
+            }
+            char[] symbols = new char[length];
+            left.getChars(0, left.length(), symbols, 0);
+            right.getChars(0, right.length(), symbols, left.length());
+            return own(new StringItem(symbols, 0, length));
+        }
+        int difference = left.depth() - right.depth();
+        if (difference > 1 || difference == 1 && right.depth() == 0
+                              && ((ConcatNode) left).right.length() + right.length() <= EDIT_BLOCK_SIZE) {
+            ConcatNode node = (ConcatNode) left;
+            return balance(node.left, join(node.right, right));
+        }
+        if (difference < -1 || difference == -1 && left.depth() == 0
+                               && left.length() + ((ConcatNode) right).left.length() <= EDIT_BLOCK_SIZE) {
+            ConcatNode node = (ConcatNode) right;
+            return balance(join(left, node.left), node.right);
+        }
+        return concat(left, right);
     }
 
     /**
-     * Конструктор, в котором реализовано преобразование стринга в объект класса {@link StringList}
+     * Создать узел из двух сбалансированных поддеревьев, выполняя поворот,
+     * если их высоты отличаются на 2
      *
-     * @param string строка
+     * @param left  левое поддерево
+     * @param right правое поддерево
+     * @return корень сбалансированного дерева
      */
-    public StringList(String string) {
-        isFromString = true;
-        StringItem node = new StringItem();
-        _head = node;
-        if (string.length() <= StringItem.SIZE) {
-            System.arraycopy(string.toCharArray(), 0, _head.symbols, 0, string.length());
-            node.len = countCharLength(node.symbols);
-            _length += _head.len;
-        } else {
-            int offset = 0;
-            int tempLen = string.length() / StringItem.SIZE;
-            StringItem tail = _head;
-            char[] substring;
-            for (int i = 0; i < tempLen; i++) {
-                node = addNodeAfter(tail);
-                substring = string.substring(offset, (i + 1) * StringItem.SIZE).toCharArray();
-                System.arraycopy(substring, 0, node.symbols, 0, substring.length);
-                node.len = countCharLength(node.symbols);
-                tail.next = node;
-                tail = node;
-                _length += node.len;
-                offset += StringItem.SIZE;
-            }
-            node = addNodeAfter(tail);
-            substring = string.substring(offset).toCharArray();
-            System.arraycopy(substring, 0, node.symbols, 0, substring.length);
-            node.len = countCharLength(node.symbols);
-            tail.next = node;
-            _length += node.len;
-        }
-    }
-
-    /**
-     * Конструктор, копирующий все элементы переданного списка для дальннейщей рбработки
+    private Node balance(Node left, Node right) {
+        int difference = left.depth() - right.depth();
+        if (difference > 2 || difference < -2)
+            return join(left, right);
+        if (difference == 2) {
+            ConcatNode node = (ConcatNode) left;
+            if (node.left.depth() >= node.right.depth())
+                return concat(node.left, concat(node.right, right));
+            ConcatNode inner = (ConcatNode) node.right;
+            return concat(concat(node.left, inner.left), concat(inner.right, right));
+        }
+        if (difference == -2) {
+            ConcatNode node = (ConcatNode) right;
+            if (node.right.depth() >= node.left.depth())
+                return concat(concat(left, node.left), node.right);
+            ConcatNode inner = (ConcatNode) node.left;
+            return concat(concat(left, inner.left), concat(inner.right, node.right));
+        }
+        return concat(left, right);
+    }
+
+    /**
+     * Получить поддерево с первыми символами строки
      *
-     * @param stringList список
+     * @param node  поддерево, может быть null
+     * @param index количество символов
+     * @return поддерево с символами [0, index) или null, если index равен 0
      */
-    public StringList(StringList stringList) {
-        if (stringList != null && stringList._head != null) {
-            StringItem workingNode = stringList._head;
-            StringItem node = new StringItem();
-            _head = node;
-            while (workingNode != null) {
-                node = addNodeAfter(node);
-                node.symbols = workingNode.symbols;
-                node.len = workingNode.len;
-                workingNode = workingNode.next;
-            }
-            this._length = stringList._length;
-            this.isFromString = false;
+    private Node prefix(Node node, int index) {
+        if (node == null || index <= 0)
+            return null;
+        if (index >= node.length())
+            return node;
+        if (node instanceof MappedItem)
+            return ((MappedItem) node).slice(0, index);
+        if (node instanceof StringItem) {
+            StringItem item = (StringItem) node;
+            if (index <= EDIT_BLOCK_SIZE)
+                return own(new StringItem(item, 0, index));
+            int border = index - EDIT_BLOCK_SIZE / 2;
+            return concat(own(new StringItem(item, 0, border)), own(new StringItem(item, border, index)));
         }
+        ConcatNode concat = (ConcatNode) node;
+        int leftLength = concat.left.length();
+        if (index <= leftLength)
+            return prefix(concat.left, index);
+        return join(concat.left, prefix(concat.right, index - leftLength));
     }
 
-    //--------------------------Приватные методы--------------------------------
-
     /**
-     * Компоновка элементов списка и удаление лишних элементов
+     * Получить поддерево с последними символами строки
      *
-     * @param node элемент списка
+     * @param node  поддерево, может быть null
+     * @param index индекс первого символа
+     * @return поддерево с символами [index, length) или null, если index равен длине
      */
-    private void sortNode(StringItem node) {
-        if (node.hasNext() && (node.len + node.next.len) <= StringItem.SIZE) {
-            System.arraycopy(node.next.symbols, 0, node.symbols, node.len, node.next.len);
-            node.len = countCharLength(node.symbols);
-            if (node.next.hasNext()) node.next = node.next.next;
-            else node.next = null;
-            sortNode(node);
+    private Node suffix(Node node, int index) {
+        if (node == null || index >= node.length())
+            return null;
+        if (index <= 0)
+            return node;
+        if (node instanceof MappedItem)
+            return ((MappedItem) node).slice(index, node.length());
+        if (node instanceof StringItem) {
+            StringItem item = (StringItem) node;
+            if (item.len - index <= EDIT_BLOCK_SIZE)
+                return own(new StringItem(item, index, item.len));
+            int border = index + EDIT_BLOCK_SIZE / 2;
+            return concat(own(new StringItem(item, index, border)), own(new StringItem(item, border, item.len)));
         }
+        ConcatNode concat = (ConcatNode) node;
+        int leftLength = concat.left.length();
+        if (index >= leftLength)
+            return suffix(concat.right, index - leftLength);
+        return join(suffix(concat.left, index), concat.right);
     }
 
     /**
-     * Подсчёт количества значащих символов в символьном массиве (не более 127 элементов)
+     * Заменить символ в поддереве. Узлы этого списка изменяются на месте,
+     * общие узлы на пути к блоку с символом копируются. Большой общий блок
+     * при этом разбивается так, что символ оказывается в небольшом блоке
      *
-     * @param chars символьный массив
-     * @return количество элементов с типом byte
+     * @param node   поддерево
+     * @param index  индекс символа в поддереве
+     * @param symbol символ для замещения
+     * @return поддерево с замещённым символом
      */
-    private byte countCharLength(char[] chars) {
-        int count = 0;
-        for (char c : chars) {
-            if (c != (char) 0)
-                count++;
+    private Node replaceChar(Node node, int index, char symbol) {
+        if (node instanceof StringItem) {
+            StringItem item = (StringItem) node;
+            if (item.owner == _owner) {
+                item.setCharAt(index, symbol);
+                return item;
+            }
+            if (item.len <= EDIT_BLOCK_SIZE) {
+                StringItem copy = own(new StringItem(item, 0, item.len));
+                copy.setCharAt(index, symbol);
+                return copy;
+            }
+            int begin = Math.max(index - EDIT_BLOCK_SIZE / 2, 0);
+            int end = Math.min(begin + EDIT_BLOCK_SIZE, item.len);
+            StringItem copy = own(new StringItem(item, begin, end));
+            copy.setCharAt(index - begin, symbol);
+            return join(join(prefix(item, begin), copy), suffix(item, end));
         }
-        return (byte) count;
+        ConcatNode concat = (ConcatNode) node;
+        int leftLength = concat.left.length();
+        Node left = concat.left;
+        Node right = concat.right;
+        if (index < leftLength)
+            left = replaceChar(left, index, symbol);
+        else
+            right = replaceChar(right, index - leftLength, symbol);
+        if (concat.owner != _owner || Math.max(left.depth(), right.depth()) + 1 != concat.depth)
+            return balance(left, right);
+        concat.left = left;
+        concat.right = right;
+        concat.latin1 = left.isLatin1() && right.isLatin1();
+        concat.resetHash();
+        return concat;
     }
 
     /**
@@ -219,52 +2464,99 @@ public class StringList {
     }
 
     /**
-     * Добавляет новый нод после указаного нода
+     * Установить новый корень, сохраняя пустую строку пустым блоком,
+     * а не отсутствием дерева
      *
-     * @param node нод, после которого добавляем элемент
-     * @return ссылка на текущий объект
+     * @param root новый корень, может быть null
      */
-    private StringItem addNodeAfter(StringItem node) {
-        StringItem newNode = new StringItem();
-        if (node == null)
-            throw new NullPointerException("Trying add new node to null");
-        if (node.hasNext())
-            newNode.next = node.next;
-        node.next = newNode;
-        return newNode;
+    private void setRoot(Node root) {
+        _root = root != null ? root : new StringItem(0);
     }
 
     /**
-     * Получить последний элемент списка
+     * Получить поддерево с символами [start, end) последовательности. Узлы
+     * другого списка или представления используются без копирования
      *
-     * @return последний элемент списка
+     * @param csq   последовательность символов
+     * @param start начальный индекс
+     * @param end   конечный индекс
+     * @return поддерево или null, если последовательность пуста
      */
-    private StringItem getLastNode() {
-        StringItem node = _head;
-        if (node == null)
-            throw new NullPointerException("Trying to get last node when head is null");
-        while (node.hasNext()) {
-            sortNode(node);
-            if (node.hasNext())
-                node = node.next;
+    private Node toNode(CharSequence csq, int start, int end) {
+        if (csq instanceof StringList) {
+            StringList stringList = (StringList) csq;
+            return suffix(prefix(stringList.share(), end), start);
         }
-        return node;
+        if (csq instanceof View) {
+            View view = (View) csq;
+            return suffix(prefix(view.root, view.begin + end), view.begin + start);
+        }
+        return build(csq, start, end, textBlockSize(end - start));
+    }
+
+    /**
+     * Объединить части дерева, попарно соединяя соседние
+     *
+     * @param pieces части дерева
+     * @param begin  индекс первой части
+     * @param end    индекс, следующий за последней частью
+     * @return корень дерева или null, если частей нет
+     */
+    private Node joinAll(List<Node> pieces, int begin, int end) {
+        if (begin == end)
+            return null;
+        if (end - begin == 1)
+            return pieces.get(begin);
+        int middle = (begin + end) >>> 1;
+        return join(joinAll(pieces, begin, middle), joinAll(pieces, middle, end));
     }
 
     /**
-     * Получить позицию блока с курсором
+     * Собрать строку из символов [begin, end) дерева
      *
-     * @param index индекс символа в строке
-     * @return объект класса {@link Position}
+     * @param root  корень дерева, может быть null
+     * @param begin начальный индекс
+     * @param end   конечный индекс
+     * @return строка
      */
-    private Position getPosition(int index) {
-        checkIndex(index, _length);
-        StringItem node = _head;
-        while (index > StringItem.SIZE && node != null) {
-            index -= node.len;
-            node = node.next;
+    private static String toString(Node root, int begin, int end) {
+        if (begin == end)
+            return "";
+        if (root.isLatin1()) {
+            byte[] ret = new byte[end - begin];
+            root.getBytes(begin, end, ret, 0);
+            return new String(ret, StandardCharsets.ISO_8859_1);
         }
-        return new Position(index, node);
+        char[] ret = new char[end - begin];
+        root.getChars(begin, end, ret, 0);
+        return new String(ret);
+    }
+
+    /**
+     * Получить поток символов [begin, end) дерева
+     *
+     * @param root  корень дерева, может быть null
+     * @param begin начальный индекс
+     * @param end   конечный индекс
+     * @return поток символов
+     */
+    private static IntStream chars(Node root, int begin, int end) {
+        return StreamSupport.intStream(Spliterators.spliterator(new CharIterator(root, begin, end), end - begin,
+                Spliterator.ORDERED | Spliterator.IMMUTABLE), false);
+    }
+
+    /**
+     * Получить поток кодовых точек символов [begin, end) дерева
+     *
+     * @param root  корень дерева, может быть null
+     * @param begin начальный индекс
+     * @param end   конечный индекс
+     * @return поток кодовых точек
+     */
+    private static IntStream codePoints(Node root, int begin, int end) {
+        return StreamSupport.intStream(Spliterators.spliteratorUnknownSize(
+                new CodePointIterator(new CharIterator(root, begin, end)),
+                Spliterator.ORDERED | Spliterator.IMMUTABLE), false);
     }
     //--------------------------------------------------------------------------
 
@@ -275,7 +2567,8 @@ public class StringList {
      * @return ссылку на этот объект
      */
     public StringList append(String string) {
-        return append(new StringList(string));
+        appendText(string, 0, string.length());
+        return this;
     }
 
     /**
@@ -285,14 +2578,63 @@ public class StringList {
      * @return ссылку на этот объект
      */
     public StringList append(StringList stringList) {
-        if (stringList != null && stringList._head != null) {
-            StringList workList;
-            if (stringList.isFromString) workList = stringList;
-            else workList = new StringList(stringList);
-            if (_head == null) _head = workList._head;
-            else getLastNode().next = workList._head;
-            _length += workList._length;
+        if (stringList != null && stringList._root != null)
+            _root = join(_root, stringList.share());
+        return this;
+    }
+
+    /**
+     * Добавить последовательность символов в конец строки. Вместо null
+     * добавляется строка "null"
+     *
+     * @param csq последовательность символов
+     * @return ссылку на этот объект
+     */
+    @Override
+    public StringList append(CharSequence csq) {
+        if (csq instanceof StringList)
+            return append((StringList) csq);
+        if (csq == null)
+            csq = "null";
+        return append(csq, 0, csq.length());
+    }
+
+    /**
+     * Добавить часть последовательности символов в конец строки. Вместо null
+     * добавляется часть строки "null"
+     *
+     * @param csq   последовательность символов
+     * @param start начальный индекс
+     * @param end   конечный индекс
+     * @return ссылку на этот объект
+     */
+    @Override
+    public StringList append(CharSequence csq, int start, int end) {
+        if (csq == null)
+            csq = "null";
+        checkBoundsBeginEnd(start, end, csq.length());
+        if (csq instanceof StringList || csq instanceof View)
+            _root = join(_root, toNode(csq, start, end));
+        else
+            appendText(csq, start, end);
+        return this;
+    }
+
+    /**
+     * Добавить символ в конец строки
+     *
+     * @param c символ
+     * @return ссылку на этот объект
+     */
+    @Override
+    public StringList append(char c) {
+        StringItem tail = tailWithRoom(1, textBlockSize(1));
+        if (tail == null) {
+            _root = join(_root, own(new StringItem(new char[]{c}, 0, 1)));
+            return this;
         }
+        tail.append(c);
+        tailGrown(tail, 1);
         return this;
     }
 
@@ -302,9 +2644,40 @@ public class StringList {
      * @param index индекс символа
      * @return символ
      */
+    @Override
     public char charAt(int index) {
-        Position position = getPosition(index);
-        return position.node.symbols[position.position];
+        checkIndex(index, length());
+        Finger finger = _finger;
+        if (finger == null || !finger.contains(_root, index))
+            _finger = finger = Finger.locate(_root, index);
+        return finger.charAt(index);
+    }
+
+    /**
+     * Получить символ, не запоминая блок, к которому было обращение. Метод ничего
+     * не записывает в список, поэтому потоки, читающие один список, не мешают друг другу
+     *
+     * @param index индекс символа
+     * @return символ
+     */
+    char charAtShared(int index) {
+        checkIndex(index, length());
+        return Finger.locate(_root, index).charAt(index);
+    }
+
+    /**
+     * Создать копию списка, ничего не записывая в этот список. В отличие от
+     * {@link #StringList(StringList)} метка списка не меняется, поэтому метод подходит
+     * только для списка, который больше никогда не изменяется, например опубликованного
+     * снимка: в его узлы никто не пишет. Копия получает собственную метку
+     * и копирует узлы перед записью в них
+     *
+     * @return копия списка
+     */
+    StringList frozenCopy() {
+        StringList copy = new StringList(_blockSize);
+        copy._root = _root;
+        return copy;
     }
 
     /**
@@ -315,8 +2688,9 @@ public class StringList {
      * @return ссылка на текщий объект
      */
     public StringList setCharAt(int index, char symbol) {
-        Position position = getPosition(index);
-        position.node.symbols[position.position] = symbol;
+        checkIndex(index, length());
+        _finger = null;
+        _root = replaceChar(_root, index, symbol);
         return this;
     }
 
@@ -328,7 +2702,10 @@ public class StringList {
      * @return ссылка на текущий объект
      */
     public StringList insert(int index, String string) {
-        return this.insert(index, new StringList(string));
+        checkIndex(index, length());
+        Node inserted = build(string, 0, string.length(), textBlockSize(string.length()));
+        _root = join(join(prefix(_root, index), inserted), suffix(_root, index));
+        return this;
     }
 
     /**
@@ -339,39 +2716,104 @@ public class StringList {
      * @return ссылка на текущий объект
      */
     public StringList insert(int index, StringList stringList) {
-        checkIndex(index, this._length);
-
-        Position position = getPosition(index);
-        StringItem prevNode = new StringItem();
-        StringItem nextNode = new StringItem();
-
-        System.arraycopy(position.node.symbols, 0, prevNode.symbols, 0, position.position);
-        System.arraycopy(position.node.symbols, position.position, nextNode.symbols, 0, StringItem.SIZE - position.position);
-
-        prevNode.len = countCharLength(prevNode.symbols);
-        nextNode.len = countCharLength(nextNode.symbols);
-
-        // Проверяем, является ли переданный список производным от String
-        StringList workList;
-        if (stringList.isFromString)    // Если да, то не создаём лишнюю копию списка
-            workList = stringList;
-        else                            // А если нет, то копируем через конструктор
-            workList = new StringList(stringList);
-
-        prevNode.next = workList._head;
-        nextNode.next = position.node.next;
-        workList.getLastNode().next = nextNode;
-        this._length += workList._length;
+        checkIndex(index, length());
+        Node inserted = stringList.share();
+        _root = join(join(prefix(_root, index), inserted), suffix(_root, index));
+        return this;
+    }
 
-        position.node.symbols = prevNode.symbols;
-        position.node.len = prevNode.len;
-        position.node.next = prevNode.next;
+    /**
+     * Удалить символы в указанных границах
+     *
+     * @param beginIndex начальный индекс
+     * @param endIndex   конечный индекс
+     * @return ссылка на текущий объект
+     */
+    public StringList delete(int beginIndex, int endIndex) {
+        checkBoundsBeginEnd(beginIndex, endIndex, length());
+        if (_root != null)
+            setRoot(join(prefix(_root, beginIndex), suffix(_root, endIndex)));
+        return this;
+    }
 
-        sortNode(_head);
+    /**
+     * Заменить символы в указанных границах последовательностью символов
+     *
+     * @param beginIndex начальный индекс
+     * @param endIndex   конечный индекс
+     * @param str        последовательность для замены
+     * @return ссылка на текущий объект
+     */
+    public StringList replace(int beginIndex, int endIndex, CharSequence str) {
+        checkBoundsBeginEnd(beginIndex, endIndex, length());
+        Node inserted = toNode(str, 0, str.length());
+        setRoot(join(join(prefix(_root, beginIndex), inserted), suffix(_root, endIndex)));
+        return this;
+    }
 
+    /**
+     * Заменить все непересекающиеся вхождения подстроки, просматривая строку слева направо.
+     * Дерево перестраивается за один проход: короткие участки между вхождениями
+     * копируются в новые блоки вместе с заменой, длинные переносятся без копирования,
+     * поэтому время работы линейно по длине строки при любом числе вхождений
+     *
+     * @param target      подстрока
+     * @param replacement замена
+     * @return ссылка на текущий объект
+     */
+    public StringList replaceAll(CharSequence target, CharSequence replacement) {
+        char[] pattern = target.toString().toCharArray();
+        char[] chars = replacement.toString().toCharArray();
+        int length = length();
+        if (pattern.length > length)
+            return this;
+        Cursor cursor = new Cursor(_root);
+        Horspool horspool = pattern.length > 1 ? new Horspool(pattern) : null;
+        Builder writer = new Builder(this, Math.max(_blockSize, EDIT_BLOCK_SIZE));
+        int position = 0;
+        while (position <= length) {
+            int match;
+            if (pattern.length == 0)
+                match = position;
+            else if (horspool == null)
+                match = cursor.indexOf(pattern[0], position, length);
+            else
+                match = horspool.indexOf(cursor, position, length);
+            if (match < 0)
+                break;
+            copyTo(writer, position, match);
+            writer.append(chars, 0, chars.length);
+            position = match + pattern.length;
+            if (pattern.length == 0) {
+                if (position == length)
+                    break;
+                copyTo(writer, position, position + 1);
+                position++;
+            }
+        }
+        if (position == 0 && pattern.length > 0)
+            return this;
+        copyTo(writer, Math.min(position, length), length);
+        _finger = null;
+        setRoot(writer.finish());
         return this;
     }
 
+    /**
+     * Перенести символы [begin, end) строки в собираемое дерево: короткие участки
+     * копируются, длинные переносятся поддеревьями без копирования
+     *
+     * @param writer собираемое дерево
+     * @param begin  начальный индекс
+     * @param end    конечный индекс
+     */
+    private void copyTo(Builder writer, int begin, int end) {
+        if (end - begin < writer._blockSize)
+            writer.append(_root, begin, end);
+        else
+            writer.appendNode(suffix(prefix(_root, end), begin));
+    }
+
     /**
      * Получить подстроку в виде объекта {@link StringList}
      *
@@ -380,53 +2822,398 @@ public class StringList {
      * @return новый объект класса {@link StringList}
      */
     public StringList substring(int beginIndex, int endIndex) {
-        checkBoundsBeginEnd(beginIndex, endIndex, this._length);
-        if (endIndex - beginIndex == _length)
-            return this;
-
-        Position firstPosition = getPosition(beginIndex);
-        Position secondPosition = getPosition(endIndex);
-
-        StringList retList = new StringList();
-        StringItem node = new StringItem();
-        retList._head = node;
-
-        if (firstPosition.node == secondPosition.node) {
-            System.arraycopy(firstPosition.node.symbols, firstPosition.position, node.symbols, 0, secondPosition.position - firstPosition.position);
-            node.len = countCharLength(node.symbols);
-            retList._length += node.len;
-            return retList;
-        }
-
-        // Добавляем часть символов из первого блока, начиная с указанной позиции
-        System.arraycopy(firstPosition.node.symbols, firstPosition.position, node.symbols, 0, StringItem.SIZE - firstPosition.position);
-        node.len = countCharLength(node.symbols);
-        retList._length += node.len;
-        firstPosition.node = firstPosition.node.next;
-
-        // Цикл для добавления символов из блоков, находящихся между первым и последним блоками
-        while (firstPosition.node != secondPosition.node) {
-            node = retList.addNodeAfter(node);
-            node.symbols = firstPosition.node.symbols;
-            node.len = firstPosition.node.len;
-            retList._length += node.len;
-            firstPosition.node = firstPosition.node.next;
-        }
-        // Добавляем часть символов из последнего блока, находящихся до указанной позиции
-        node = retList.addNodeAfter(node);
-        System.arraycopy(secondPosition.node.symbols, 0, node.symbols, 0, secondPosition.position);
-        node.len = countCharLength(node.symbols);
-        retList._length += node.len;
+        checkBoundsBeginEnd(beginIndex, endIndex, length());
+        StringList retList = new StringList(_blockSize);
+        if (_root != null)
+            retList.setRoot(retList.suffix(retList.prefix(share(), endIndex), beginIndex));
         return retList;
     }
 
+    /**
+     * Получить часть строки в виде представления, не копирующего символы.
+     * Представление не видит изменений, сделанных в списке после его получения
+     *
+     * @param start начальный индекс
+     * @param end   конечный индекс
+     * @return представление части строки
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        checkBoundsBeginEnd(start, end, length());
+        if (_root == null)
+            return "";
+        return new View(share(), start, end);
+    }
+
+    /**
+     * Скопировать символы строки в массив, обходя блоки напрямую
+     *
+     * @param srcBegin начальный индекс в строке
+     * @param srcEnd   конечный индекс в строке
+     * @param dst      массив для копирования
+     * @param dstBegin позиция в массиве, с которой начинается запись
+     */
+    public void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin) {
+        checkBoundsBeginEnd(srcBegin, srcEnd, length());
+        checkBoundsBeginEnd(dstBegin, dstBegin + srcEnd - srcBegin, dst.length);
+        if (srcBegin < srcEnd)
+            _root.getChars(srcBegin, srcEnd, dst, dstBegin);
+    }
+
+    /**
+     * Получить поток символов строки, обходящий блоки напрямую.
+     * Поток читает снимок строки на момент вызова
+     *
+     * @return поток символов
+     */
+    @Override
+    public IntStream chars() {
+        return chars(share(), 0, length());
+    }
+
+    /**
+     * Получить поток кодовых точек строки, обходящий блоки напрямую.
+     * Поток читает снимок строки на момент вызова
+     *
+     * @return поток кодовых точек
+     */
+    @Override
+    public IntStream codePoints() {
+        return codePoints(share(), 0, length());
+    }
+
+    /**
+     * Найти первое вхождение символа
+     *
+     * @param ch кодовая точка символа
+     * @return индекс символа или -1, если символ не найден
+     */
+    public int indexOf(int ch) {
+        return indexOf(ch, 0);
+    }
+
+    /**
+     * Найти первое вхождение символа, начиная с указанного индекса.
+     * Блоки просматриваются целиком простым циклом по их массивам
+     *
+     * @param ch        кодовая точка символа
+     * @param fromIndex начальный индекс
+     * @return индекс символа или -1, если символ не найден
+     */
+    public int indexOf(int ch, int fromIndex) {
+        if (Character.isBmpCodePoint(ch))
+            return new Cursor(_root).indexOf((char) ch, Math.max(fromIndex, 0), length());
+        if (!Character.isValidCodePoint(ch))
+            return -1;
+        return indexOf(new String(Character.toChars(ch)), fromIndex);
+    }
+
+    /**
+     * Найти последнее вхождение символа
+     *
+     * @param ch кодовая точка символа
+     * @return индекс символа или -1, если символ не найден
+     */
+    public int lastIndexOf(int ch) {
+        return lastIndexOf(ch, length() - 1);
+    }
+
+    /**
+     * Найти последнее вхождение символа, начиная поиск назад с указанного индекса
+     *
+     * @param ch        кодовая точка символа
+     * @param fromIndex индекс, с которого начинается поиск
+     * @return индекс символа или -1, если символ не найден
+     */
+    public int lastIndexOf(int ch, int fromIndex) {
+        if (Character.isBmpCodePoint(ch)) {
+            int end = fromIndex >= length() ? length() : fromIndex + 1;
+            return new Cursor(_root).lastIndexOf((char) ch, 0, end);
+        }
+        if (!Character.isValidCodePoint(ch))
+            return -1;
+        return lastIndexOf(new String(Character.toChars(ch)), fromIndex);
+    }
+
+    /**
+     * Найти первое вхождение подстроки
+     *
+     * @param str подстрока
+     * @return индекс вхождения или -1, если подстрока не найдена
+     */
+    public int indexOf(CharSequence str) {
+        return indexOf(str, 0);
+    }
+
+    /**
+     * Найти первое вхождение подстроки, начиная с указанного индекса. Поиск идёт
+     * по блокам без сборки строки и учитывает вхождения на границах блоков
+     *
+     * @param str       подстрока
+     * @param fromIndex начальный индекс
+     * @return индекс вхождения или -1, если подстрока не найдена
+     */
+    public int indexOf(CharSequence str, int fromIndex) {
+        int length = length();
+        fromIndex = Math.max(fromIndex, 0);
+        char[] pattern = str.toString().toCharArray();
+        if (pattern.length == 0)
+            return Math.min(fromIndex, length);
+        if (pattern.length == 1)
+            return new Cursor(_root).indexOf(pattern[0], fromIndex, length);
+        return new Horspool(pattern).indexOf(new Cursor(_root), fromIndex, length);
+    }
+
+    /**
+     * Найти последнее вхождение подстроки
+     *
+     * @param str подстрока
+     * @return индекс вхождения или -1, если подстрока не найдена
+     */
+    public int lastIndexOf(CharSequence str) {
+        return lastIndexOf(str, length());
+    }
+
+    /**
+     * Найти последнее вхождение подстроки, начинающееся не позже указанного индекса
+     *
+     * @param str       подстрока
+     * @param fromIndex наибольший индекс начала вхождения
+     * @return индекс вхождения или -1, если подстрока не найдена
+     */
+    public int lastIndexOf(CharSequence str, int fromIndex) {
+        char[] pattern = str.toString().toCharArray();
+        fromIndex = Math.min(fromIndex, length() - pattern.length);
+        if (fromIndex < 0)
+            return -1;
+        if (pattern.length == 0)
+            return fromIndex;
+        if (pattern.length == 1)
+            return new Cursor(_root).lastIndexOf(pattern[0], 0, fromIndex + 1);
+        return new Horspool(pattern).lastIndexOf(new Cursor(_root), fromIndex);
+    }
+
+    /**
+     * Узнать, содержит ли строка подстроку
+     *
+     * @param str подстрока
+     * @return true, если подстрока найдена
+     */
+    public boolean contains(CharSequence str) {
+        return indexOf(str) >= 0;
+    }
+
+    /**
+     * Узнать, начинается ли строка с указанного префикса
+     *
+     * @param prefix префикс
+     * @return true, если строка начинается с префикса
+     */
+    public boolean startsWith(CharSequence prefix) {
+        return startsWith(prefix, 0);
+    }
+
+    /**
+     * Узнать, начинается ли с указанного префикса часть строки после указанного индекса
+     *
+     * @param prefix  префикс
+     * @param toffset индекс, с которого проверяется префикс
+     * @return true, если префикс найден в этом месте
+     */
+    public boolean startsWith(CharSequence prefix, int toffset) {
+        char[] pattern = prefix.toString().toCharArray();
+        if (toffset < 0 || toffset > length() - pattern.length)
+            return false;
+        return new Cursor(_root).regionMatches(toffset, pattern);
+    }
+
+    /**
+     * Узнать, заканчивается ли строка указанным суффиксом
+     *
+     * @param suffix суффикс
+     * @return true, если строка заканчивается суффиксом
+     */
+    public boolean endsWith(CharSequence suffix) {
+        return startsWith(suffix, length() - suffix.length());
+    }
+
+    /**
+     * Получить итератор по индексам всех вхождений подстроки, в том числе
+     * перекрывающихся. Итератор читает снимок строки на момент вызова
+     *
+     * @param str подстрока
+     * @return итератор по индексам вхождений
+     */
+    public PrimitiveIterator.OfInt occurrences(CharSequence str) {
+        char[] pattern = str.toString().toCharArray();
+        return new OccurrenceIterator(share(), length(), pattern);
+    }
+
+    /**
+     * Записать строку в канал в кодировке Latin-1, символы вне неё заменяются на '?'.
+     * Неизменённые участки отображённых файлов передаются через
+     * {@link FileChannel#transferTo(long, long, WritableByteChannel)} без чтения в кучу.
+     * Канал не должен указывать на файл, отображённый в этот список
+     *
+     * @param target канал для записи
+     * @return количество записанных байт
+     * @throws EOFException если отображённый файл был укорочен после {@link #map(Path)}
+     * @throws IOException  если запись не удалась
+     */
+    public long transferTo(WritableByteChannel target) throws IOException {
+        Transfer transfer = new Transfer(target);
+        if (_root != null)
+            transfer.write(_root);
+        transfer.flush();
+        return transfer.written;
+    }
+
+    /**
+     * Записать строку в поток символов. Блоки в UTF-16 передаются потоку
+     * без копирования, блоки в Latin-1 - через небольшой буфер.
+     * Поток не закрывается и не сбрасывается
+     *
+     * @param writer поток символов
+     * @throws IOException если запись не удалась
+     */
+    public void writeTo(Writer writer) throws IOException {
+        char[] buffer = null;
+        int length = length();
+        for (int index = 0; index < length; ) {
+            StringItem item = Finger.locate(_root, index).item;
+            if (item.symbols != null) {
+                writer.write(item.symbols, 0, item.len);
+            } else {
+                if (buffer == null)
+                    buffer = new char[Math.min(IO_BUFFER_SIZE, length)];
+                for (int begin = 0; begin < item.len; begin += buffer.length) {
+                    int end = Math.min(begin + buffer.length, item.len);
+                    item.getChars(begin, end, buffer, 0);
+                    writer.write(buffer, 0, end - begin);
+                }
+            }
+            index += item.len;
+        }
+    }
+
+    /**
+     * Закодировать строку и записать её в канал. Символы кодируются порциями,
+     * суррогатная пара на границе порций не разрывается. Что делать с символами,
+     * которых нет в кодировке, определяют настройки кодировщика. Канал должен
+     * быть блокирующим, он не закрывается
+     *
+     * @param channel канал
+     * @param encoder кодировщик, он сбрасывается перед записью
+     * @return количество записанных байт
+     * @throws IOException если запись не удалась или символ не удалось закодировать
+     */
+    public long writeTo(WritableByteChannel channel, CharsetEncoder encoder) throws IOException {
+        encoder.reset();
+        CharBuffer in = CharBuffer.allocate(IO_BUFFER_SIZE);
+        ByteBuffer out = ByteBuffer.allocate((int) Math.ceil(IO_BUFFER_SIZE * encoder.maxBytesPerChar()));
+        long written = 0;
+        int length = length();
+        int index = 0;
+        boolean endOfInput;
+        do {
+            int n = Math.min(in.remaining(), length - index);
+            if (n > 0) {
+                _root.getChars(index, index + n, in.array(), in.position());
+                in.position(in.position() + n);
+                index += n;
+            }
+            endOfInput = index == length;
+            in.flip();
+            CoderResult result;
+            while ((result = encoder.encode(in, out, endOfInput)).isOverflow())
+                written += drain(out, channel);
+            if (result.isError())
+                result.throwException();
+            in.compact();
+        } while (!endOfInput);
+        while (encoder.flush(out).isOverflow())
+            written += drain(out, channel);
+        written += drain(out, channel);
+        return written;
+    }
+
+    /**
+     * Записать содержимое буфера в канал и очистить буфер
+     *
+     * @param buffer  буфер в режиме записи
+     * @param channel канал
+     * @return количество записанных байт
+     * @throws IOException если запись не удалась
+     */
+    private static int drain(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+        buffer.flip();
+        int written = 0;
+        while (buffer.hasRemaining())
+            written += channel.write(buffer);
+        buffer.clear();
+        return written;
+    }
+
     /**
      * Получить длину строки
      *
      * @return длина строки
      */
+    @Override
     public int length() {
-        return this._length;
+        return _root == null ? 0 : _root.length();
+    }
+
+    /**
+     * Получить размер блоков, на которые разбивается строка
+     *
+     * @return размер блока
+     */
+    public int blockSize() {
+        return _blockSize;
+    }
+
+    /**
+     * Получить отчёт о занимаемой списком памяти, чтобы подобрать размер блока
+     *
+     * @return отчёт класса {@link MemoryFootprint}
+     */
+    public MemoryFootprint memoryFootprint() {
+        MemoryFootprint footprint = new MemoryFootprint();
+        footprint.length = length();
+        footprint.bytes = MemoryFootprint.align(MemoryFootprint.OBJECT_HEADER + 2 * MemoryFootprint.REFERENCE + Integer.BYTES);
+        if (_root != null) {
+            footprint.depth = _root.depth();
+            footprint.add(_root);
+        }
+        return footprint;
+    }
+
+    /**
+     * Освободить список: массивы блоков, которые принадлежат только ему,
+     * возвращаются в пул текущего потока и используются классом {@link Builder}.
+     * Блоки, общие с копиями, подстроками и представлениями, не затрагиваются.
+     * После вызова список пуст
+     */
+    public void release() {
+        BlockPool pool = BlockPool.get();
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        if (_root != null)
+            stack.push(_root);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            if (node.owner != _owner)
+                continue;
+            if (node instanceof ConcatNode) {
+                stack.push(((ConcatNode) node).right);
+                stack.push(((ConcatNode) node).left);
+            } else {
+                pool.give((StringItem) node);
+            }
+        }
+        _finger = null;
+        _owner = new Object();
+        setRoot(null);
     }
 
     //--------------------------Object method overrides-------------------------
@@ -438,32 +3225,38 @@ public class StringList {
      */
     @Override
     public String toString() {
-        char[] ret = new char[_length];
-        StringItem node = _head;
-        int offset = 0;
-        if (node == null)
-            return "null";
-        while (node != null) {
-            sortNode(node);
-            System.arraycopy(node.symbols, 0, ret, offset, node.len);
-            offset += node.len;
-            node = node.next;
-        }
-        return new String(ret);
+        return toString(_root, 0, length());
     }
 
+    /**
+     * Переопределение метода. Списки равны, если равны их символы.
+     * Блоки сравниваются по порядку без сборки строк, общие блоки пропускаются
+     *
+     * @param o объект для сравнения
+     * @return true, если объект - список с теми же символами
+     */
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         StringList that = (StringList) o;
-        return _length == that._length &&
-               isFromString == that.isFromString &&
-               Objects.equals(_head, that._head);
+        int length = length();
+        if (length != that.length()) return false;
+        if (_root == that._root || length == 0) return true;
+        int h = _root.hash, thatH = that._root.hash;
+        if (h != 0 && thatH != 0 && h != thatH) return false;
+        return contentEquals(_root, that._root, length);
     }
 
+    /**
+     * Переопределение метода. Хэш-код совпадает с хэш-кодом строки
+     * {@link #toString()}. Он хранится в узлах дерева, поэтому после
+     * изменения пересчитываются только изменённые блоки и путь к ним
+     *
+     * @return хэш-код
+     */
     @Override
     public int hashCode() {
-        return Objects.hash(_head, _length, isFromString);
+        return _root == null ? 0 : _root.hash();
     }
 }
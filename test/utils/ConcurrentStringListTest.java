@@ -0,0 +1,158 @@
+package utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Проверки {@link ConcurrentStringList}: операции сравниваются с {@link StringBuilder},
+ * а читатели, работающие вместе с писателями, проверяют, что видят только целые изменения
+ *
+ * @author Aleksei Vokhmin
+ */
+class ConcurrentStringListTest {
+    @Test
+    void editsMatchStringBuilder() {
+        Random random = new Random(12);
+        ConcurrentStringList list = new ConcurrentStringList("initial");
+        StringBuilder model = new StringBuilder("initial");
+        for (int step = 0; step < 5000; step++) {
+            String text = Integer.toString(random.nextInt(1000), 36) + (random.nextInt(10) == 0 ? "ж" : "");
+            int index = random.nextInt(model.length());
+            switch (random.nextInt(6)) {
+                case 0 -> {
+                    list.append(text);
+                    model.append(text);
+                }
+                case 1 -> {
+                    list.append(text.charAt(0));
+                    model.append(text.charAt(0));
+                }
+                case 2 -> {
+                    list.insert(index, text);
+                    model.insert(index, text);
+                }
+                case 3 -> {
+                    list.setCharAt(index, text.charAt(0));
+                    model.setCharAt(index, text.charAt(0));
+                }
+                case 4 -> {
+                    int end = Math.min(model.length(), index + random.nextInt(8));
+                    if (end - index < model.length()) {
+                        list.delete(index, end);
+                        model.delete(index, end);
+                    }
+                }
+                default -> {
+                    int end = Math.min(model.length(), index + random.nextInt(8));
+                    list.replace(index, end, text);
+                    model.replace(index, end, text);
+                }
+            }
+            assertEquals(model.length(), list.length());
+            int probe = random.nextInt(model.length());
+            assertEquals(model.charAt(probe), list.charAt(probe));
+        }
+        assertEquals(model.toString(), list.toString());
+        assertEquals(model.toString().hashCode(), list.hashCode());
+        assertEquals(model.indexOf("zz"), list.indexOf("zz"));
+        assertEquals(new ConcurrentStringList(model.toString()), list);
+    }
+
+    @Test
+    void snapshotIsIndependent() {
+        ConcurrentStringList list = new ConcurrentStringList("abc");
+        StringList snapshot = list.snapshot();
+        snapshot.setCharAt(0, 'X');
+        snapshot.append("def");
+        assertEquals("abc", list.toString());
+        list.append("ghi");
+        list.setCharAt(1, 'Y');
+        assertEquals("Xbcdef", snapshot.toString());
+        assertEquals("aYcghi", list.toString());
+        assertEquals("aYcghi", list.snapshot().toString());
+    }
+
+    @Test
+    void failedUpdateLeavesListUnchanged() {
+        ConcurrentStringList list = new ConcurrentStringList("stable");
+        assertThrows(IllegalStateException.class, () -> list.update(buffer -> {
+            buffer.append("partial");
+            buffer.setCharAt(0, 'S');
+            throw new IllegalStateException();
+        }));
+        assertEquals("stable", list.toString());
+        assertThrows(IndexOutOfBoundsException.class, () -> list.delete(3, 100));
+        list.append('!');
+        assertEquals("stable!", list.toString());
+    }
+
+    @Test
+    void readersSeeOnlyWholeUpdates() throws Exception {
+        int length = 10_000;
+        ConcurrentStringList list = new ConcurrentStringList("0123456789".repeat(length / 10));
+        int writers = 2;
+        int readers = 3;
+        ExecutorService executor = Executors.newFixedThreadPool(writers + readers);
+        AtomicBoolean stop = new AtomicBoolean();
+        List<Future<?>> writes = new ArrayList<>();
+        List<Future<?>> reads = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            Random random = new Random(w);
+            writes.add(executor.submit(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    int index = random.nextInt(length - 2);
+                    if (i % 2 == 0)
+                        list.setCharAt(index, 'x');
+                    else
+                        list.update(buffer -> {
+                            buffer.insert(index, "yy");
+                            buffer.delete(index, index + 2);
+                        });
+                }
+                return null;
+            }));
+        }
+        for (int r = 0; r < readers; r++) {
+            reads.add(executor.submit(() -> {
+                long previous = 0;
+                int index = 0;
+                for (int round = 0; round < 100 || !stop.get(); round++) {
+                    StringList snapshot = list.snapshot();
+                    String content = snapshot.toString();
+                    assertEquals(length, content.length());
+                    assertFalse(content.contains("y"), "half of an update is visible");
+                    long marks = content.chars().filter(c -> c == 'x').count();
+                    assertTrue(marks >= previous, "an older version is visible after a newer one");
+                    previous = marks;
+                    char c = list.charAt(index);
+                    assertTrue(c == 'x' || c >= '0' && c <= '9');
+                    index = (index + 7919) % length;
+                    assertEquals(content, snapshot.toString(), "snapshot changed");
+                }
+                return null;
+            }));
+        }
+        for (Future<?> write : writes)
+            write.get(60, TimeUnit.SECONDS);
+        stop.set(true);
+        for (Future<?> read : reads)
+            read.get(60, TimeUnit.SECONDS);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(length, list.length());
+        assertEquals(list.toString().hashCode(), list.hashCode());
+    }
+}
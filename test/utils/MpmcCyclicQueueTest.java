@@ -0,0 +1,127 @@
+package utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Проверки {@link MpmcCyclicQueue}: в одном потоке операции сравниваются
+ * с {@link ArrayDeque}, а при нескольких производителях и потребителях проверяется,
+ * что каждый элемент забран ровно один раз и в порядке своего производителя
+ *
+ * @author Aleksei Vokhmin
+ */
+class MpmcCyclicQueueTest {
+    @Test
+    void matchesArrayDeque() {
+        Random random = new Random(21);
+        for (int capacity : new int[]{1, 2, 3, 64, 1000}) {
+            MpmcCyclicQueue queue = new MpmcCyclicQueue(capacity);
+            int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+            assertEquals(size, queue.capacity());
+            ArrayDeque<Integer> model = new ArrayDeque<>();
+            for (int step = 0; step < 100_000; step++) {
+                if (random.nextInt(100) < 50 + (step / 1000 % 2 == 0 ? 10 : -10)) {
+                    int value = random.nextInt();
+                    boolean added = queue.offer(value);
+                    assertEquals(model.size() < size, added);
+                    if (added)
+                        model.addLast(value);
+                } else {
+                    OptionalInt value = queue.poll();
+                    assertEquals(!model.isEmpty(), value.isPresent());
+                    if (value.isPresent())
+                        assertEquals(model.pollFirst(), value.getAsInt());
+                }
+                assertEquals(model.size(), queue.size());
+                assertEquals(model.isEmpty(), queue.isEmpty());
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> new MpmcCyclicQueue(0));
+        assertThrows(IllegalArgumentException.class, () -> new MpmcCyclicQueue(MpmcCyclicQueue.MAX_CAPACITY + 1));
+    }
+
+    @Test
+    void everyElementIsTakenOnceInProducerOrder() throws Exception {
+        int producers = 4;
+        int consumers = 4;
+        int perProducer = 200_000;
+        for (int capacity : new int[]{2, 64}) {
+            MpmcCyclicQueue queue = new MpmcCyclicQueue(capacity);
+            ExecutorService executor = Executors.newFixedThreadPool(producers + consumers);
+            List<Future<?>> producing = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                int producer = p;
+                producing.add(executor.submit(() -> {
+                    for (int i = 0; i < perProducer; i++)
+                        queue.put(producer * perProducer + i);
+                    return null;
+                }));
+            }
+            List<Future<int[]>> consuming = new ArrayList<>();
+            for (int c = 0; c < consumers; c++) {
+                consuming.add(executor.submit(() -> {
+                    int[] last = new int[producers];
+                    Arrays.fill(last, -1);
+                    int[] taken = new int[producers];
+                    for (int i = 0; i < perProducer; i++) {
+                        int value = queue.take();
+                        int producer = value / perProducer;
+                        int sequence = value % perProducer;
+                        assertTrue(sequence > last[producer], "producer order is broken");
+                        last[producer] = sequence;
+                        taken[producer]++;
+                    }
+                    return taken;
+                }));
+            }
+            for (Future<?> future : producing)
+                future.get(120, TimeUnit.SECONDS);
+            int[] total = new int[producers];
+            for (Future<int[]> future : consuming) {
+                int[] taken = future.get(120, TimeUnit.SECONDS);
+                for (int p = 0; p < producers; p++)
+                    total[p] += taken[p];
+            }
+            executor.shutdown();
+            for (int p = 0; p < producers; p++)
+                assertEquals(perProducer, total[p]);
+            assertFalse(queue.poll().isPresent());
+            assertTrue(queue.isEmpty());
+        }
+    }
+
+    @Test
+    void waitingIsInterruptible() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        MpmcCyclicQueue empty = new MpmcCyclicQueue();
+        Future<Integer> consumer = executor.submit(empty::take);
+        Thread.sleep(50);
+        executor.shutdownNow();
+        ExecutionException taken = assertThrows(ExecutionException.class, () -> consumer.get(10, TimeUnit.SECONDS));
+        assertTrue(taken.getCause() instanceof InterruptedException);
+
+        MpmcCyclicQueue full = new MpmcCyclicQueue(2);
+        full.offer(1);
+        full.offer(2);
+        Thread.currentThread().interrupt();
+        assertThrows(InterruptedException.class, () -> full.put(3));
+        assertFalse(Thread.interrupted());
+        assertEquals(1, full.poll().getAsInt());
+    }
+}
@@ -0,0 +1,92 @@
+package utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.OptionalInt;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Проверки {@link SpscCyclicQueue}: в одном потоке операции сравниваются
+ * с {@link ArrayDeque}, а в двух потоках проверяется порядок передачи элементов
+ *
+ * @author Aleksei Vokhmin
+ */
+class SpscCyclicQueueTest {
+    @Test
+    void matchesArrayDeque() {
+        Random random = new Random(21);
+        for (int capacity : new int[]{1, 2, 3, 64, 1000}) {
+            SpscCyclicQueue queue = new SpscCyclicQueue(capacity);
+            int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+            assertEquals(size, queue.capacity());
+            ArrayDeque<Integer> model = new ArrayDeque<>();
+            for (int step = 0; step < 100_000; step++) {
+                if (random.nextInt(100) < 50 + (step / 1000 % 2 == 0 ? 10 : -10)) {
+                    int value = random.nextInt();
+                    boolean added = queue.offer(value);
+                    assertEquals(model.size() < size, added);
+                    if (added)
+                        model.addLast(value);
+                } else {
+                    OptionalInt value = queue.poll();
+                    assertEquals(!model.isEmpty(), value.isPresent());
+                    if (value.isPresent())
+                        assertEquals(model.pollFirst(), value.getAsInt());
+                }
+                assertEquals(model.size(), queue.size());
+                assertEquals(model.isEmpty(), queue.isEmpty());
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> new SpscCyclicQueue(0));
+        assertThrows(IllegalArgumentException.class, () -> new SpscCyclicQueue(SpscCyclicQueue.MAX_CAPACITY + 1));
+    }
+
+    @Test
+    void consumerReceivesProducerOrder() throws Exception {
+        int count = 500_000;
+        for (int capacity : new int[]{1, 16, 1024}) {
+            SpscCyclicQueue queue = new SpscCyclicQueue(capacity);
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            Future<?> producer = executor.submit(() -> {
+                for (int i = 0; i < count; i++)
+                    queue.put(i);
+                return null;
+            });
+            for (int i = 0; i < count; i++)
+                assertEquals(i, queue.take());
+            producer.get(60, TimeUnit.SECONDS);
+            executor.shutdown();
+            assertFalse(queue.poll().isPresent());
+            assertTrue(queue.isEmpty());
+        }
+    }
+
+    @Test
+    void waitingIsInterruptible() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        SpscCyclicQueue empty = new SpscCyclicQueue();
+        Future<Integer> consumer = executor.submit(empty::take);
+        SpscCyclicQueue full = new SpscCyclicQueue(1);
+        full.offer(1);
+        Thread.sleep(50);
+        executor.shutdownNow();
+        ExecutionException taken = assertThrows(ExecutionException.class, () -> consumer.get(10, TimeUnit.SECONDS));
+        assertTrue(taken.getCause() instanceof InterruptedException);
+
+        Thread.currentThread().interrupt();
+        assertThrows(InterruptedException.class, () -> full.put(2));
+        assertFalse(Thread.interrupted());
+        assertEquals(1, full.poll().getAsInt());
+    }
+}
@@ -0,0 +1,579 @@
+package utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Проверки {@link StringList} на случайных операциях. Каждая операция
+ * повторяется на эталоне - {@link StringBuilder} или {@link String},
+ * после чего содержимое списка сравнивается с эталоном
+ *
+ * @author Aleksei Vokhmin
+ */
+class StringListTest {
+    /**
+     * Случайная строка из латиницы, нулевых символов и, если wide, кириллицы
+     *
+     * @param random генератор
+     * @param length длина строки
+     * @param wide   добавлять ли символы вне Latin-1
+     * @return строка
+     */
+    private static String randomString(Random random, int length, boolean wide) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            if (wide && random.nextInt(50) == 0)
+                sb.append((char) (0x400 + random.nextInt(100)));
+            else if (random.nextInt(40) == 0)
+                sb.append('\0');
+            else
+                sb.append((char) ('a' + random.nextInt(26)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Строка из первых символов алфавита, чтобы в ней было много совпадений
+     *
+     * @param random   генератор
+     * @param length   длина строки
+     * @param alphabet количество различных символов
+     * @return строка
+     */
+    private static String repetitiveString(Random random, int length, int alphabet) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            if (random.nextInt(30) == 0)
+                sb.append((char) (0x430 + random.nextInt(alphabet)));
+            else
+                sb.append((char) ('a' + random.nextInt(alphabet)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Сравнить список с эталоном целиком и посимвольно
+     *
+     * @param expected эталон
+     * @param list     список
+     * @param message  описание последней операции
+     */
+    private static void assertContent(CharSequence expected, StringList list, String message) {
+        assertEquals(expected.length(), list.length(), message);
+        assertEquals(expected.toString(), list.toString(), message);
+        for (int i = 0; i < expected.length(); i++)
+            assertEquals(expected.charAt(i), list.charAt(i), message);
+    }
+
+    @Test
+    void editsMatchStringBuilder() {
+        Random random = new Random(1);
+        for (int iteration = 0; iteration < 300; iteration++) {
+            boolean wide = random.nextBoolean();
+            String initial = randomString(random, random.nextInt(random.nextBoolean() ? 100 : 3000), wide);
+            StringList list = random.nextBoolean() ? new StringList(initial) : new StringList(initial, 1 + random.nextInt(300));
+            StringBuilder model = new StringBuilder(initial);
+            StringList snapshot = new StringList(list);
+            List<StringList> copies = new ArrayList<>();
+            List<String> copyModels = new ArrayList<>();
+            for (int step = 0; step < 200; step++) {
+                int op = random.nextInt(6);
+                String text = randomString(random, random.nextInt(40), wide);
+                if (op == 0) {
+                    list.append(text);
+                    model.append(text);
+                } else if (op == 1 && model.length() > 0) {
+                    int index = random.nextInt(model.length());
+                    list.insert(index, text);
+                    model.insert(index, text);
+                } else if (op == 2 && model.length() > 0) {
+                    int index = random.nextInt(model.length());
+                    char symbol = random.nextInt(10) == 0 ? 'ж' : (char) ('A' + random.nextInt(26));
+                    list.setCharAt(index, symbol);
+                    model.setCharAt(index, symbol);
+                } else if (op == 3) {
+                    int begin = random.nextInt(model.length() + 1);
+                    int end = begin + random.nextInt(model.length() - begin + 1);
+                    list.delete(begin, end);
+                    model.delete(begin, end);
+                } else if (op == 4) {
+                    int begin = random.nextInt(model.length() + 1);
+                    int end = begin + random.nextInt(model.length() - begin + 1);
+                    StringList sub = list.substring(begin, end);
+                    assertEquals(model.substring(begin, end), sub.toString());
+                    if (model.length() > 0) {
+                        int index = random.nextInt(model.length());
+                        list.insert(index, sub);
+                        model.insert(index, model.substring(begin, end));
+                    }
+                } else if (op == 5 && model.length() < 3000) {
+                    list.append(list);
+                    model.append(model.toString());
+                }
+                if (random.nextInt(20) == 0) {
+                    copies.add(new StringList(list));
+                    copyModels.add(model.toString());
+                }
+                if (random.nextInt(20) == 0 && model.length() > 2) {
+                    copies.add(list.substring(1, model.length() - 1));
+                    copyModels.add(model.substring(1, model.length() - 1));
+                }
+                if (random.nextInt(10) == 0 && !copies.isEmpty()) {
+                    int j = random.nextInt(copies.size());
+                    StringList copy = copies.get(j);
+                    if (copy.length() > 0) {
+                        int index = random.nextInt(copy.length());
+                        copy.setCharAt(index, '#');
+                        StringBuilder copyModel = new StringBuilder(copyModels.get(j));
+                        copyModel.setCharAt(index, '#');
+                        copyModels.set(j, copyModel.toString());
+                    }
+                }
+                assertContent(model, list, "operation " + op);
+            }
+            assertEquals(initial, snapshot.toString(), "snapshot changed");
+            for (int j = 0; j < copies.size(); j++)
+                assertEquals(copyModels.get(j), copies.get(j).toString(), "copy " + j + " changed");
+        }
+    }
+
+    @Test
+    void charAtFollowsEditsInAnyOrder() {
+        Random random = new Random(2);
+        StringList list = new StringList(randomString(random, 5000, true));
+        StringBuilder model = new StringBuilder(list.toString());
+        for (int step = 0; step < 2000; step++) {
+            int index = random.nextInt(model.length());
+            String text = randomString(random, 1 + random.nextInt(8), true);
+            list.insert(index, text);
+            model.insert(index, text);
+            for (int i = Math.max(index - 20, 0); i < Math.min(index + 20, model.length()); i++)
+                assertEquals(model.charAt(i), list.charAt(i));
+            int probe = random.nextInt(model.length());
+            assertEquals(model.charAt(probe), list.charAt(probe));
+        }
+        for (int i = model.length() - 1; i >= 0; i--)
+            assertEquals(model.charAt(i), list.charAt(i));
+    }
+
+    @Test
+    void interleavedInsertAndCharAtStayLogarithmic() {
+        Random random = new Random(3);
+        StringList list = new StringList(randomString(random, 1 << 20, false));
+        long checksum = 0;
+        for (int step = 1; step <= 100_000; step++) {
+            list.insert(random.nextInt(list.length()), "hello");
+            checksum += list.charAt(random.nextInt(list.length()));
+            if (step % 10_000 == 0) {
+                StringList.MemoryFootprint footprint = list.memoryFootprint();
+                double bound = 1.45 * Math.log(footprint.getBlocks() + 2) / Math.log(2);
+                assertTrue(footprint.getDepth() <= bound, footprint.toString());
+            }
+        }
+        assertEquals((1 << 20) + 500_000, list.length());
+        assertTrue(checksum > 0);
+    }
+
+    @Test
+    void charSequenceViewsAndStreams() {
+        String string = "foo=1; bar=22; 😀 baz=333; ".repeat(2000);
+        StringList list = new StringList(string);
+        Matcher matcher = Pattern.compile("(\\w+)=(\\d+)").matcher(list);
+        int count = 0;
+        while (matcher.find())
+            count++;
+        assertEquals(6000, count);
+        assertArrayEquals(string.chars().toArray(), list.chars().toArray());
+        assertArrayEquals(string.codePoints().toArray(), list.codePoints().toArray());
+
+        CharSequence view = list.subSequence(5, 200);
+        assertEquals(string.substring(5, 200), view.toString());
+        assertEquals(string.substring(8, 15), view.subSequence(3, 10).toString());
+        list.setCharAt(6, 'X');
+        assertEquals(string.charAt(6), view.charAt(1), "view sees a later edit");
+
+        char[] dst = new char[50];
+        list.getChars(10, 60, dst, 0);
+        assertEquals(list.toString().substring(10, 60), new String(dst));
+
+        StringList appended = new StringList();
+        appended.append('a').append("bc").append(new StringBuilder("de")).append(view, 0, 4).append((CharSequence) null);
+        assertEquals("abcde" + string.substring(5, 9) + "null", appended.toString());
+    }
+
+    @Test
+    void searchMatchesString() {
+        Random random = new Random(5);
+        for (int iteration = 0; iteration < 300; iteration++) {
+            int alphabet = 1 + random.nextInt(4);
+            String string = repetitiveString(random, random.nextInt(3000), alphabet);
+            StringList list = random.nextBoolean() ? new StringList(string, 1 + random.nextInt(100)) : new StringList(string);
+            if (random.nextBoolean() && !string.isEmpty()) {
+                list.insert(random.nextInt(string.length()), "abc");
+                string = list.toString();
+            }
+            for (int query = 0; query < 20; query++) {
+                int m = random.nextInt(6);
+                String pattern = repetitiveString(random, m, alphabet);
+                if (random.nextBoolean() && string.length() > m) {
+                    int start = random.nextInt(string.length() - m);
+                    pattern = string.substring(start, start + m);
+                }
+                int from = random.nextInt(string.length() + 3) - 1;
+                String message = "pattern \"" + pattern + "\" from " + from;
+                assertEquals(string.indexOf(pattern), list.indexOf(pattern), message);
+                assertEquals(string.indexOf(pattern, from), list.indexOf(pattern, from), message);
+                assertEquals(string.lastIndexOf(pattern), list.lastIndexOf(pattern), message);
+                assertEquals(string.lastIndexOf(pattern, from), list.lastIndexOf(pattern, from), message);
+                if (m > 0) {
+                    char symbol = pattern.charAt(0);
+                    assertEquals(string.indexOf(symbol, from), list.indexOf(symbol, from), message);
+                    assertEquals(string.lastIndexOf(symbol, from), list.lastIndexOf(symbol, from), message);
+                }
+                assertEquals(string.contains(pattern), list.contains(pattern), message);
+                assertEquals(string.startsWith(pattern), list.startsWith(pattern), message);
+                assertEquals(string.endsWith(pattern), list.endsWith(pattern), message);
+                assertEquals(string.startsWith(pattern, from), list.startsWith(pattern, from), message);
+
+                List<Integer> expected = new ArrayList<>();
+                for (int i = string.indexOf(pattern); i >= 0; i = i >= string.length() ? -1 : string.indexOf(pattern, i + 1))
+                    expected.add(i);
+                List<Integer> actual = new ArrayList<>();
+                list.occurrences(pattern).forEachRemaining((int i) -> actual.add(i));
+                assertEquals(expected, actual, message);
+            }
+        }
+        assertEquals(1, new StringList("x😀y").indexOf(0x1F600));
+    }
+
+    @Test
+    void searchAcceptsExtremeFromIndex() {
+        String string = "abcabc😀";
+        StringList list = new StringList(string);
+        for (int from : new int[]{Integer.MIN_VALUE, -1, 0, 3, string.length(), Integer.MAX_VALUE - 1, Integer.MAX_VALUE}) {
+            String message = "from " + from;
+            assertEquals(string.indexOf('a', from), list.indexOf('a', from), message);
+            assertEquals(string.lastIndexOf('a', from), list.lastIndexOf('a', from), message);
+            assertEquals(string.lastIndexOf(0x1F600, from), list.lastIndexOf(0x1F600, from), message);
+            assertEquals(string.indexOf("bc", from), list.indexOf("bc", from), message);
+            assertEquals(string.lastIndexOf("bc", from), list.lastIndexOf("bc", from), message);
+            assertEquals(string.lastIndexOf("", from), list.lastIndexOf("", from), message);
+        }
+        assertEquals(0, new StringList("abc").lastIndexOf('a', Integer.MAX_VALUE));
+    }
+
+    @Test
+    void replaceMatchesString() {
+        Random random = new Random(7);
+        for (int iteration = 0; iteration < 1000; iteration++) {
+            int alphabet = 1 + random.nextInt(3);
+            StringBuilder sb = new StringBuilder();
+            int n = random.nextInt(random.nextBoolean() ? 50 : 5000);
+            for (int i = 0; i < n; i++)
+                sb.append((char) ('a' + random.nextInt(alphabet)));
+            String string = sb.toString();
+            StringList list = random.nextBoolean() ? new StringList(string, 1 + random.nextInt(200)) : new StringList(string);
+            StringBuilder target = new StringBuilder();
+            for (int i = random.nextInt(4); i > 0; i--)
+                target.append((char) ('a' + random.nextInt(alphabet)));
+            String replacement = random.nextInt(5) == 0 ? "" : "XY".repeat(random.nextInt(3)) + (random.nextBoolean() ? "ж" : "");
+            StringList snapshot = new StringList(list);
+
+            list.replaceAll(target, replacement);
+            String expected = string.replace(target, replacement);
+            assertContent(expected, list, "replaceAll \"" + target + "\" in \"" + string + "\"");
+            assertEquals(string, snapshot.toString(), "snapshot changed");
+
+            if (!expected.isEmpty()) {
+                int begin = random.nextInt(expected.length());
+                int end = begin + random.nextInt(expected.length() - begin + 1);
+                CharSequence source = random.nextBoolean() ? replacement : new StringList(replacement);
+                list.replace(begin, end, source);
+                assertContent(new StringBuilder(expected).replace(begin, end, replacement), list, "replace");
+            }
+        }
+    }
+
+    @Test
+    void replaceAllEmptyTargetInEmptyList() {
+        assertEquals("".replace("", "x"), new StringList().replaceAll("", "x").toString());
+        assertEquals("".replace("", "x"), new StringList("").replaceAll("", "x").toString());
+        assertEquals("", new StringList().replaceAll("a", "x").toString());
+        assertEquals("xaxbx", new StringList().append("ab").replaceAll("", "x").toString());
+    }
+
+    @Test
+    void equalsAndHashCodeFollowContent() {
+        Random random = new Random(11);
+        for (int iteration = 0; iteration < 1000; iteration++) {
+            String string = repetitiveString(random, random.nextInt(random.nextBoolean() ? 40 : 4000), 3);
+            StringBuilder model = new StringBuilder(string);
+            StringList blocks = new StringList(string, 1 + random.nextInt(100));
+            StringList pieces = new StringList();
+            for (int p = 0; p < string.length(); ) {
+                int q = Math.min(string.length(), p + 1 + random.nextInt(300));
+                pieces.append(string, p, q);
+                p = q;
+            }
+            assertEquals(string.hashCode(), blocks.hashCode());
+            assertEquals(string.hashCode(), pieces.hashCode());
+            assertEquals(blocks, pieces);
+            assertEquals(pieces, blocks);
+
+            StringList copy = new StringList(blocks);
+            for (int k = 0; k < 5 && !string.isEmpty(); k++) {
+                int index = random.nextInt(string.length());
+                char symbol = (char) ('a' + random.nextInt(4));
+                model.setCharAt(index, symbol);
+                blocks.setCharAt(index, symbol);
+                assertEquals(model.toString().hashCode(), blocks.hashCode());
+                assertEquals(model.toString().equals(string), blocks.equals(pieces));
+            }
+            assertEquals(string.hashCode(), copy.hashCode());
+        }
+        assertEquals(new StringList(), new StringList(""));
+    }
+
+    @Test
+    void builderMatchesStringBuilder() {
+        Random random = new Random(13);
+        for (int iteration = 0; iteration < 2000; iteration++) {
+            StringList.Builder builder = random.nextBoolean() ? new StringList.Builder() : new StringList.Builder(1 + random.nextInt(300));
+            StringBuilder model = new StringBuilder();
+            for (int k = random.nextInt(60); k > 0; k--) {
+                String fragment = randomString(random, random.nextInt(random.nextInt(10) == 0 ? 3000 : 30), true);
+                switch (random.nextInt(6)) {
+                    case 0 -> builder.append(fragment);
+                    case 1 -> {
+                        fragment = fragment.isEmpty() ? "q" : fragment.substring(0, 1);
+                        builder.append(fragment.charAt(0));
+                    }
+                    case 2 -> builder.append(fragment.toCharArray(), 0, fragment.length());
+                    case 3 -> {
+                        StringList source = new StringList(fragment);
+                        builder.append(source);
+                        if (!fragment.isEmpty())
+                            source.setCharAt(0, 'Z');
+                    }
+                    case 4 -> builder.append(new StringBuilder(fragment), 0, fragment.length());
+                    default -> {
+                        StringList source = new StringList(fragment + "xyz");
+                        builder.append(source.subSequence(1, source.length()));
+                        fragment = (fragment + "xyz").substring(1);
+                    }
+                }
+                model.append(fragment);
+                assertEquals(model.length(), builder.length());
+            }
+            assertEquals(model.toString(), builder.toString());
+            StringList list = builder.build();
+            assertContent(model, list, "build");
+            assertEquals(0, builder.length(), "builder is not reset");
+
+            StringList copy = new StringList(list);
+            if (list.length() > 0) {
+                list.setCharAt(0, 'ж');
+                assertEquals(model.toString(), copy.toString(), "copy changed");
+            }
+            if (random.nextBoolean()) {
+                copy.release();
+                list.release();
+                assertEquals(0, list.length());
+            }
+        }
+    }
+
+    @Test
+    void readAndWriteRoundTrip() throws IOException {
+        Random random = new Random(14);
+        Charset[] charsets = {StandardCharsets.UTF_8, StandardCharsets.UTF_16LE, StandardCharsets.ISO_8859_1,
+                Charset.forName("windows-1251")};
+        for (int iteration = 0; iteration < 200; iteration++) {
+            StringBuilder sb = new StringBuilder();
+            int kind = random.nextInt(3);
+            for (int i = random.nextInt(random.nextBoolean() ? 100 : 40000); i > 0; i--) {
+                int k = random.nextInt(20);
+                if (kind > 0 && k == 0)
+                    sb.appendCodePoint(0x1F600 + random.nextInt(50));
+                else if (kind > 0 && k < 3)
+                    sb.append((char) (0x410 + random.nextInt(30)));
+                else
+                    sb.append((char) (32 + random.nextInt(200)));
+            }
+            String string = sb.toString();
+            StringList list = StringList.read(new StringReader(string));
+            assertEquals(string, list.toString());
+            StringWriter writer = new StringWriter();
+            list.writeTo(writer);
+            assertEquals(string, writer.toString());
+
+            Charset charset = kind == 0 ? charsets[random.nextInt(4)] : charsets[random.nextInt(2)];
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            long written = list.writeTo(Channels.newChannel(out), charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE));
+            byte[] expected = string.getBytes(charset);
+            assertArrayEquals(expected, out.toByteArray());
+            assertEquals(expected.length, written);
+            StringList decoded = StringList.read(Channels.newChannel(new ChunkedInputStream(expected, random)), charset);
+            assertEquals(new String(expected, charset), decoded.toString());
+        }
+        assertThrows(CharacterCodingException.class, () -> new StringList("abcж")
+                .writeTo(Channels.newChannel(new ByteArrayOutputStream()), StandardCharsets.ISO_8859_1.newEncoder()));
+    }
+
+    @Test
+    void mappedFileEditsAndTransfer(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("lines.log");
+        StringBuilder model = new StringBuilder();
+        for (int i = 0; i < 200000; i++)
+            model.append("line ").append(i).append('\n');
+        Files.writeString(file, model);
+
+        StringList list = StringList.map(file);
+        assertEquals(model.length(), list.length());
+        list.insert(6, "INSERTED");
+        model.insert(6, "INSERTED");
+        list.setCharAt(100000, '#');
+        model.setCharAt(100000, '#');
+        list.delete(500000, 500100);
+        model.delete(500000, 500100);
+        list.append("tail");
+        model.append("tail");
+        assertEquals(model.indexOf("line 199999"), list.indexOf("line 199999"));
+        assertEquals(model.lastIndexOf("#"), list.lastIndexOf('#'));
+
+        Path copy = directory.resolve("copy.log");
+        Files.createFile(copy);
+        try (FileChannel channel = FileChannel.open(copy, StandardOpenOption.WRITE)) {
+            assertEquals(model.length(), list.transferTo(channel));
+        }
+        assertEquals(model.toString(), Files.readString(copy, StandardCharsets.ISO_8859_1));
+        assertEquals(0, StringList.map(Files.createFile(directory.resolve("empty"))).length());
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(100);
+        }
+        assertThrows(EOFException.class, () -> list.transferTo(Channels.newChannel(new ByteArrayOutputStream())));
+    }
+
+    @Test
+    void memoryFootprintCountsBlocks() {
+        String string = "x".repeat(1 << 20);
+        StringList small = new StringList(string, 16);
+        StringList large = new StringList(string, 4096);
+        assertEquals(string.length(), small.memoryFootprint().getLength());
+        assertEquals(string.length() / 16, small.memoryFootprint().getBlocks());
+        assertEquals(string.length() / 4096, large.memoryFootprint().getBlocks());
+        assertTrue(large.memoryFootprint().getBytesPerChar() < 1.1, large.memoryFootprint().toString());
+    }
+
+    @Test
+    void appendedListsAreAsCompactAsConstructedOnes() {
+        StringList chars = new StringList();
+        for (int i = 0; i < 1_000_000; i++)
+            chars.append((char) ('a' + i % 26));
+        StringList words = new StringList();
+        for (int i = 0; i < 200_000; i++)
+            words.append("hello");
+        StringList lines = new StringList("", 4096);
+        String line = "x".repeat(100);
+        for (int i = 0; i < 10_000; i++)
+            lines.append(line);
+        StringList wide = new StringList();
+        for (int i = 0; i < 200_000; i++)
+            wide.append("hellж");
+
+        for (StringList list : new StringList[]{chars, words, lines}) {
+            StringList.MemoryFootprint footprint = list.memoryFootprint();
+            assertEquals(1_000_000, footprint.getLength());
+            assertTrue(footprint.getBytesPerChar() < 1.5, footprint.toString());
+            assertTrue(footprint.getBlocks() < 2000, footprint.toString());
+        }
+        assertTrue(wide.memoryFootprint().getBytesPerChar() < 2.5, wide.memoryFootprint().toString());
+        assertEquals("hello".repeat(200_000), words.toString());
+        assertEquals("hellж".repeat(200_000).hashCode(), wide.hashCode());
+    }
+
+    @Test
+    void appendInPlaceLeavesCopiesAlone() {
+        StringList list = new StringList("abc");
+        StringList copy = new StringList(list);
+        CharSequence view = list.subSequence(0, 3);
+        StringList sub = list.substring(1, 3);
+        list.append('d').append("ef");
+        StringList.Builder builder = new StringList.Builder();
+        StringList built = builder.append("xyz").build();
+        StringList builtCopy = new StringList(built);
+        built.append("ж").append('!');
+        int hash = list.hashCode();
+        list.append("gh");
+
+        assertEquals("abcdefgh", list.toString());
+        assertEquals("abcdefgh".hashCode(), list.hashCode());
+        assertTrue(hash != list.hashCode());
+        assertEquals("abc", copy.toString());
+        assertEquals("abc", view.toString());
+        assertEquals("bc", sub.toString());
+        assertEquals("xyzж!", built.toString());
+        assertEquals("xyz", builtCopy.toString());
+        copy.append("123");
+        assertEquals("abc123", copy.toString());
+        assertEquals("abcdefgh", list.toString());
+    }
+
+    /**
+     * Поток, отдающий данные кусками случайной длины, как сетевое соединение
+     */
+    private static class ChunkedInputStream extends InputStream {
+        private final byte[] data;
+        private final Random random;
+        private int position;
+
+        ChunkedInputStream(byte[] data, Random random) {
+            this.data = data;
+            this.random = random;
+        }
+
+        @Override
+        public int read() {
+            return position < data.length ? data[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position >= data.length)
+                return -1;
+            int n = Math.min(Math.min(len, 1 + random.nextInt(7)), data.length - position);
+            System.arraycopy(data, position, b, off, n);
+            position += n;
+            return n;
+        }
+    }
+}